@@ -7,6 +7,7 @@ import me.stahu.gsblockshuffle.gui.BossBarTimer;
 import me.stahu.gsblockshuffle.gui.TeammateCompass;
 import me.stahu.gsblockshuffle.gui.page.MainMenuGui;
 import me.stahu.gsblockshuffle.settings.CategoryTree;
+import me.stahu.gsblockshuffle.settings.ConfigurationWriter;
 import me.stahu.gsblockshuffle.team.TeamsManager;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.Bukkit;
@@ -17,7 +18,6 @@ import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.security.CodeSource;
@@ -33,11 +33,14 @@ public final class GSBlockShuffle extends JavaPlugin {
     private File settingsFile;
     public YamlConfiguration settings;
     private File includedBlocksFile;
+    private File categoryOverridesFile;
     public CategoryTree categoryTree;
     public GameStateManager gameStateManager;
     private TeamsManager teamsManager;
     public TeammateCompass teammateCompass;
+    public PlayerListener playerListener;
     private BossBarTimer bossBarTimer;
+    private ConfigurationWriter configurationWriter;
 
     public static Logger LOGGER;
 
@@ -50,31 +53,30 @@ public final class GSBlockShuffle extends JavaPlugin {
         this.createSettingsFile();
 
         this.settings = YamlConfiguration.loadConfiguration(this.settingsFile);
+        this.configurationWriter = new ConfigurationWriter(this);
 
         this.includedBlocksFile = this.getDataFolder().toPath().resolve("block_list_categorized.yml").toFile();
         this.createIncludedBlocksFile();
+        this.categoryOverridesFile = this.getDataFolder().toPath().resolve("block_list_overrides.yml").toFile();
 
         this.createPresets();
 
         //load categories configuration
         this.categoryTree = new CategoryTree();
-        try {
-            categoryTree.parseYaml(includedBlocksFile.getPath());
-        } catch (FileNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "Error parsing includedBlocksFile", e);
-        }
+        this.parseCategoryTree();
 
         //create gui
         MainMenuGui mainMenuGui = new MainMenuGui(null, settings, this);
 
         // TODO setting this up immediately is inefficient
         this.teamsManager = new TeamsManager(settings, this);
-        this.teammateCompass = new TeammateCompass(teamsManager);
+        this.teammateCompass = new TeammateCompass(this, teamsManager);
         this.bossBarTimer = new BossBarTimer(teamsManager);
         gameStateManager = new GameStateManager(settings, this, teamsManager, bossBarTimer);
 
         //register events for PlayerListener
-        getServer().getPluginManager().registerEvents(new PlayerListener(settings, this, gameStateManager, teamsManager, teammateCompass), this);
+        this.playerListener = new PlayerListener(settings, this, gameStateManager, teamsManager, teammateCompass);
+        getServer().getPluginManager().registerEvents(playerListener, this);
 
 
         BlockShuffleCommand blockShuffleCommand = new BlockShuffleCommand(mainMenuGui, gameStateManager, settings, this, teamsManager);
@@ -85,6 +87,7 @@ public final class GSBlockShuffle extends JavaPlugin {
     @Override
     public void onDisable() {
         // Plugin shutdown logic
+        configurationWriter.flush();
         teamsManager.clearScoreboards();
         bossBarTimer.clearBossBars();
         teammateCompass.clearCompassBars();
@@ -163,28 +166,61 @@ public final class GSBlockShuffle extends JavaPlugin {
     }
 
 
+    /**
+     * Saves the settings and the changes made to the categories.
+     * The files are written in the background after the save delay, see ConfigurationWriter.
+     */
     public void saveConfiguration() {
-        this.categoryTree.saveConfiguration(includedBlocksFile.getPath());
+        this.saveCategoryOverrides();
         //save settings
-        try {
-            this.settings.save(this.settingsFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        this.configurationWriter.write(this.settingsFile.toPath(), this.settings.saveToString(), getSaveDelay());
+    }
+
+    /**
+     * Saves the changes made to the categories without touching the block list or the settings.
+     */
+    public void saveCategoryOverrides() {
+        this.configurationWriter.write(categoryOverridesFile.toPath(), this.categoryTree.saveOverridesToString(), getSaveDelay());
+    }
+
+    private long getSaveDelay() {
+        return settings.getInt("saveDelay", 20);
     }
 
     public void loadConfiguration() {
         System.out.println("previous difficultyCap: " + settings.get("difficultyCap"));
+        // write the pending changes before reading the files again
+        this.configurationWriter.flush();
         try {
             this.settings.load(this.settingsFile);
         } catch (IOException | InvalidConfigurationException e) {
             throw new RuntimeException(e);
         }
         System.out.println("after difficultyCap: " + settings.get("difficultyCap"));
+        this.parseCategoryTree();
+    }
+
+    /**
+     * Parses the block list into the category tree and reports the time it took and every problem found in it.
+     */
+    private void parseCategoryTree() {
         try {
-            this.categoryTree.parseYaml(includedBlocksFile.getPath());
-        } catch (FileNotFoundException e) {
+            this.categoryTree.parseYaml(includedBlocksFile.getPath(), categoryOverridesFile.getPath());
+        } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error parsing includedBlocksFile", e);
+            return;
+        }
+        LOGGER.info("Loaded " + includedBlocksFile.getName() + (this.categoryTree.isLoadedFromSnapshot() ? " from snapshot" : " from YAML")
+                + " in " + String.format("%.2f", this.categoryTree.getLoadNanos() / 1_000_000.0) + " ms");
+        List<String> problems = this.categoryTree.getLoadProblems();
+        for (String problem : problems) {
+            LOGGER.warning(includedBlocksFile.getName() + " " + problem);
+        }
+        if (!problems.isEmpty()) {
+            LOGGER.warning(problems.size() + " problem(s) found in " + includedBlocksFile.getName());
+        }
+        for (String problem : this.categoryTree.getOverrideProblems()) {
+            LOGGER.warning(categoryOverridesFile.getName() + " " + problem);
         }
     }
 
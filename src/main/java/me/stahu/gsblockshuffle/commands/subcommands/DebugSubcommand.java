@@ -2,13 +2,23 @@ package me.stahu.gsblockshuffle.commands.subcommands;
 
 import me.stahu.gsblockshuffle.GSBlockShuffle;
 import me.stahu.gsblockshuffle.commands.CommandBase;
+import me.stahu.gsblockshuffle.event.DetectionSource;
+import me.stahu.gsblockshuffle.event.DetectionStats;
 import me.stahu.gsblockshuffle.event.GameStateManager;
+import me.stahu.gsblockshuffle.event.PlayerListener;
+import me.stahu.gsblockshuffle.gui.CompassBenchmark;
+import me.stahu.gsblockshuffle.settings.BlockPool;
+import me.stahu.gsblockshuffle.settings.CompiledCategoryTree;
+import me.stahu.gsblockshuffle.settings.DifficultyIndex;
+import me.stahu.gsblockshuffle.team.Leaderboard;
 import me.stahu.gsblockshuffle.team.TeamsManager;
 import org.bukkit.ChatColor;
+import org.bukkit.Material;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Team;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -45,14 +55,22 @@ public class DebugSubcommand extends CommandBase implements Subcommand {
         }
 
         switch (args[1].toLowerCase()) {
+            case "compassbench" -> compassBench(sender, args);
             case "startgame" -> startGame(sender);
             case "newround" -> newRound(sender);
             case "endround" -> endRound(sender);
             case "endgame" -> endGame(sender);
+            case "detectionstats" -> detectionStats(sender, args);
+            case "footprint" -> footprint(sender);
             case "getroundsremaining" -> getRoundsRemaining(sender);
+            case "leaderboard" -> leaderboard(sender, args);
+            case "movestats" -> moveStats(sender, args);
             case "get" -> getSetting(sender, args);
+            case "poolsizes" -> poolSizes(sender);
             case "set" -> setSetting(sender, args);
+            case "teamindex" -> teamIndex(sender);
             case "tp" -> teleportToPlayer(sender, args);
+            case "waiting" -> waiting(sender, args);
         }
     }
 
@@ -76,10 +94,180 @@ public class DebugSubcommand extends CommandBase implements Subcommand {
         gameStateManager.setGameState(0);
     }
 
+    private void footprint(CommandSender sender) {
+        CompiledCategoryTree compiledTree = plugin.categoryTree.getCompiledTree();
+        BlockPool blockPool = plugin.categoryTree.getBlockPool(settings);
+
+        sender.sendMessage(ChatColor.GREEN + "Estimated heap footprint " + ChatColor.GRAY + "(" + compiledTree.getElementCount() + " blocks)");
+        sender.sendMessage(ChatColor.DARK_AQUA + " Category tree" + ChatColor.WHITE + ": "
+                + ChatColor.DARK_GREEN + compiledTree.estimateListHeapBytes() + " B" + ChatColor.GRAY + " as lists, "
+                + ChatColor.DARK_GREEN + compiledTree.estimateHeapBytes() + " B" + ChatColor.GRAY + " compiled");
+        sender.sendMessage(ChatColor.DARK_AQUA + " Current pool" + ChatColor.WHITE + ": "
+                + ChatColor.DARK_GREEN + blockPool.estimateListHeapBytes() + " B" + ChatColor.GRAY + " as lists, "
+                + ChatColor.DARK_GREEN + blockPool.estimateHeapBytes() + " B" + ChatColor.GRAY + " compiled ("
+                + blockPool.size() + " packs, " + blockPool.getElementCount() + " blocks)");
+    }
+
+    private void poolSizes(CommandSender sender) {
+        DifficultyIndex difficultyIndex = plugin.categoryTree.getDifficultyIndex(settings);
+        int currentDifficulty = settings.getInt("difficulty");
+
+        sender.sendMessage(ChatColor.GREEN + "Pool size per difficulty " + ChatColor.GRAY + "(includeLowerDifficulties: "
+                + settings.getBoolean("includeLowerDifficulties") + ", treatAllAsIndividualBlocks: "
+                + settings.getBoolean("treatAllAsIndividualBlocks") + ")");
+        for (int difficulty = 0; difficulty <= difficultyIndex.getMaxDifficulty(); difficulty++) {
+            int nextDifficulty = difficultyIndex.getNextNonEmptyDifficulty(difficulty);
+            sender.sendMessage((difficulty == currentDifficulty ? ChatColor.GOLD : ChatColor.DARK_AQUA) + " " + difficulty
+                    + ChatColor.WHITE + ": " + ChatColor.DARK_GREEN + difficultyIndex.getPoolSize(difficulty)
+                    + (nextDifficulty != difficulty ? ChatColor.GRAY + " (next non-empty: " + nextDifficulty + ")" : ""));
+        }
+    }
+
+    private void teamIndex(CommandSender sender) {
+        List<String> inconsistencies = teamsManager.checkPlayerTeamIndex();
+        if (inconsistencies.isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "Player team index matches the scoreboard.");
+            return;
+        }
+        sender.sendMessage(ChatColor.RED + "Player team index has " + inconsistencies.size() + " inconsistencies:");
+        for (String inconsistency : inconsistencies) {
+            sender.sendMessage(ChatColor.GRAY + " " + inconsistency);
+        }
+    }
+
+    private void leaderboard(CommandSender sender, String[] args) {
+        Leaderboard leaderboard = teamsManager.getLeaderboard();
+        if (args.length > 2) {
+            Team team = teamsManager.getTeam(args[2]);
+            if (team == null) {
+                sender.sendMessage(ChatColor.RED + "Team " + args[2] + " does not exist.");
+                return;
+            }
+            sender.sendMessage(ChatColor.GREEN + team.getDisplayName() + ChatColor.GREEN + " is in place " + ChatColor.DARK_AQUA
+                    + leaderboard.getPlace(team) + ChatColor.GRAY + " (score " + leaderboard.getScore(team) + ")");
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "Leader score: " + ChatColor.DARK_AQUA + leaderboard.getLeaderScore());
+        for (Leaderboard.Place place : leaderboard.getPlaces()) {
+            sender.sendMessage(ChatColor.DARK_AQUA + " " + place.place() + ChatColor.WHITE + ". " + place.team().getDisplayName()
+                    + ChatColor.GRAY + ": " + place.score());
+        }
+    }
+
     private void getRoundsRemaining(CommandSender sender) {
         sender.sendMessage(ChatColor.GREEN + "Rounds remaining: " + ChatColor.DARK_AQUA + gameStateManager.getRoundsRemaining());
     }
 
+    private void moveStats(CommandSender sender, String[] args) {
+        PlayerListener playerListener = plugin.playerListener;
+
+        if (args.length > 2 && args[2].equalsIgnoreCase("reset")) {
+            playerListener.resetMoveEventCounters();
+            sender.sendMessage(ChatColor.GREEN + "Move event counters have been reset.");
+            return;
+        }
+
+        long filtered = playerListener.getFilteredMoveEvents();
+        long processed = playerListener.getProcessedMoveEvents();
+        long total = filtered + processed;
+        double filteredPercent = total == 0 ? 0 : 100.0 * filtered / total;
+
+        sender.sendMessage(ChatColor.GREEN + "Move events filtered: " + ChatColor.DARK_AQUA + filtered
+                + ChatColor.GRAY + " (" + String.format("%.1f", filteredPercent) + "%)");
+        sender.sendMessage(ChatColor.GREEN + "Move events processed: " + ChatColor.DARK_AQUA + processed);
+    }
+
+    private void compassBench(CommandSender sender, String[] args) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(ChatColor.RED + "You must be a player to benchmark your compass.");
+            return;
+        }
+
+        int iterations = 10_000;
+        if (args.length > 2) {
+            try {
+                iterations = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Iterations must be a number.");
+                return;
+            }
+        }
+        // the benchmark blocks the server thread
+        if (iterations < 1 || iterations > CompassBenchmark.MAX_ITERATIONS) {
+            sender.sendMessage(ChatColor.RED + "Iterations must be between 1 and " + CompassBenchmark.MAX_ITERATIONS + ".");
+            return;
+        }
+
+        double[] result = new CompassBenchmark(plugin.teammateCompass, teamsManager).run(player, iterations);
+        if (result == null) {
+            sender.sendMessage(ChatColor.RED + "Measuring allocations is not supported by this JVM.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "Legacy renderer: " + ChatColor.DARK_AQUA + String.format("%.1f", result[0]) + " B"
+                + ChatColor.GRAY + " / " + String.format("%.0f", result[1]) + " ns per render");
+        sender.sendMessage(ChatColor.GREEN + "Current renderer: " + ChatColor.DARK_AQUA + String.format("%.1f", result[2]) + " B"
+                + ChatColor.GRAY + " / " + String.format("%.0f", result[3]) + " ns per render");
+    }
+
+    private void detectionStats(CommandSender sender, String[] args) {
+        DetectionStats stats = gameStateManager.detectionStats;
+
+        if (args.length > 2 && args[2].equalsIgnoreCase("reset")) {
+            stats.reset();
+            sender.sendMessage(ChatColor.GREEN + "Detection stats have been reset.");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "Detection calls: " + ChatColor.DARK_AQUA + stats.getDetectionCalls()
+                + ChatColor.GRAY + " (" + stats.getCallsPerSecond() + "/s, avg " + String.format("%.2f", stats.getDetectionAverageMicros())
+                + "µs, max " + String.format("%.2f", stats.getDetectionMaxMicros()) + "µs)");
+        sender.sendMessage(ChatColor.GRAY + " " + stats.formatDetectionHistogram());
+
+        StringBuilder exits = new StringBuilder();
+        for (DetectionStats.ExitReason reason : DetectionStats.ExitReason.values()) {
+            exits.append(" ").append(ChatColor.DARK_AQUA).append(reason.name()).append(ChatColor.WHITE).append(": ")
+                    .append(ChatColor.DARK_GREEN).append(stats.getExits(reason));
+        }
+        sender.sendMessage(ChatColor.GREEN + "Early exits:" + exits);
+
+        for (DetectionSource source : DetectionSource.values()) {
+            sender.sendMessage(ChatColor.DARK_AQUA + " " + source.name() + ChatColor.WHITE + ": "
+                    + ChatColor.DARK_GREEN + stats.getChecks(source) + ChatColor.GRAY + " checks, "
+                    + ChatColor.DARK_GREEN + stats.getFound(source) + ChatColor.GRAY + " found");
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "Found block calls: " + ChatColor.DARK_AQUA + stats.getFoundCalls()
+                + ChatColor.GRAY + " (avg " + String.format("%.2f", stats.getFoundAverageMicros())
+                + "µs, max " + String.format("%.2f", stats.getFoundMaxMicros()) + "µs)");
+        sender.sendMessage(ChatColor.GRAY + " " + stats.formatFoundHistogram());
+
+        sender.sendMessage(ChatColor.GREEN + "Time to find: " + ChatColor.DARK_AQUA + stats.getFinds()
+                + ChatColor.GRAY + " finds (avg " + String.format("%.1f", stats.getFindAverageSeconds())
+                + "s, min " + String.format("%.1f", stats.getFindMinSeconds())
+                + "s, max " + String.format("%.1f", stats.getFindMaxSeconds()) + "s)");
+        sender.sendMessage(ChatColor.GRAY + " " + stats.formatFindTimeHistogram());
+    }
+
+    private void waiting(CommandSender sender, String[] args) {
+        if (args.length > 2) {
+            Material material = Material.getMaterial(args[2].toUpperCase());
+            if (material == null) {
+                sender.sendMessage(ChatColor.RED + "Material " + ChatColor.DARK_AQUA + args[2] + ChatColor.RED + " does not exist.");
+                return;
+            }
+            sender.sendMessage(ChatColor.DARK_AQUA + material.name() + ChatColor.WHITE + ": " + ChatColor.DARK_GREEN + gameStateManager.getPlayersWaitingFor(material));
+            return;
+        }
+
+        if (gameStateManager.getWaitedForMaterials().isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "No players are waiting for a block.");
+            return;
+        }
+        for (Material material : gameStateManager.getWaitedForMaterials()) {
+            sender.sendMessage(ChatColor.DARK_AQUA + material.name() + ChatColor.WHITE + ": " + ChatColor.DARK_GREEN + gameStateManager.getPlayersWaitingFor(material));
+        }
+    }
+
     private void getSetting(CommandSender sender, String[] args) {
         String key = args[2];
         if (!settings.contains(key)) {
@@ -131,15 +319,23 @@ public class DebugSubcommand extends CommandBase implements Subcommand {
         if (args.length == 2) {
             // keep alphabetical order
             List<String> completions = List.of(
+                    "compassBench",
+                    "detectionStats",
                     "endGame",
                     "endRound",
+                    "footprint",
                     "get",
                     "getRoundsRemaining",
+                    "leaderboard",
+                    "moveStats",
                     "newRound",
+                    "poolSizes",
                     "saveSettings",
                     "set",
                     "startGame",
-                    "tp");
+                    "teamIndex",
+                    "tp",
+                    "waiting");
             return filterCompletions(completions, args[1]);
         }
 
@@ -150,6 +346,21 @@ public class DebugSubcommand extends CommandBase implements Subcommand {
                     return filterCompletions(settingKeysList, args[2]);
                 }
             }
+            case "detectionstats", "movestats" -> {
+                if (args.length == 3) {
+                    return filterCompletions(List.of("reset"), args[2]);
+                }
+            }
+            case "leaderboard" -> {
+                if (args.length == 3) {
+                    return filterCompletions(teamsManager.teams.stream().map(Team::getName).toList(), args[2]);
+                }
+            }
+            case "waiting" -> {
+                if (args.length == 3) {
+                    return filterCompletions(gameStateManager.getWaitedForMaterials().stream().map(Material::name).toList(), args[2].toLowerCase());
+                }
+            }
         }
 
         return Collections.emptyList();
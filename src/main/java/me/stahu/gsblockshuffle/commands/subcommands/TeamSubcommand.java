@@ -50,7 +50,7 @@ public class TeamSubcommand extends CommandBase implements Subcommand {
             sender.sendMessage(ChatColor.GRAY + "Team " + team.getDisplayName() + ChatColor.GRAY + " members:");
             for (String entry : team.getEntries()) {
                 String message = " ● ";
-                if (teamManager.teamCaptains.containsKey(Bukkit.getPlayer(entry))) {
+                if (teamManager.isTeamCaptain(Bukkit.getPlayer(entry))) {
                     message += ChatColor.AQUA + entry;
                 } else {
                     message += entry;
@@ -99,7 +99,7 @@ public class TeamSubcommand extends CommandBase implements Subcommand {
 
     private void changeTeamColor(CommandSender sender, String[] args) {
         //check if sender is the captain of his team "You must be a captain of a team to change it's color"
-        if (!teamManager.teamCaptains.containsKey((Player) sender)) {
+        if (!teamManager.isTeamCaptain((Player) sender)) {
             sender.sendMessage(ChatColor.RED + "You must be a captain of a team to change it's color.");
             return;
         }
@@ -142,7 +142,7 @@ public class TeamSubcommand extends CommandBase implements Subcommand {
     }
 
     private void teamRemove(CommandSender sender, String[] args) {
-        if (teamManager.teamCaptains.containsKey((Player) sender) && args.length == 2) {
+        if (teamManager.isTeamCaptain((Player) sender) && args.length == 2) {
             sender.sendMessage(ChatColor.RED + "You are not the captain of your team.");
             return;
         } else if (args.length == 2 && !sender.hasPermission("BlockShuffle.command.team.remove")) {
@@ -214,7 +214,7 @@ public class TeamSubcommand extends CommandBase implements Subcommand {
      * @param sender The sender of the command, usually a player.
      */
     private void teamAccept(CommandSender sender) {
-        if (teamManager.teamCaptains.containsKey((Player) sender)) {
+        if (teamManager.isTeamCaptain((Player) sender)) {
             if (!teamManager.joinTeamRequestAccept((Player) sender)) {
                 sender.sendMessage(ChatColor.RED + "You do not have any pending team requests.");
                 return;
@@ -0,0 +1,31 @@
+package me.stahu.gsblockshuffle.event;
+
+/**
+ * The kinds of position changes that trigger target detection.
+ */
+public enum DetectionSource {
+    /**
+     * The player walked into a new block.
+     */
+    MOVE,
+    /**
+     * The player was teleported, including teleports between teammates.
+     */
+    TELEPORT,
+    /**
+     * The vehicle the player is riding entered a new block.
+     */
+    VEHICLE,
+    /**
+     * The player respawned.
+     */
+    RESPAWN,
+    /**
+     * The player joined or rejoined the server.
+     */
+    JOIN,
+    /**
+     * The player was checked by the tick detection task.
+     */
+    TICK
+}
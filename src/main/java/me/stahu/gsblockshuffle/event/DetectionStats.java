@@ -0,0 +1,245 @@
+package me.stahu.gsblockshuffle.event;
+
+import java.util.Arrays;
+
+/**
+ * Counters and latency histograms for target detection.
+ * All storage is allocated up front, so recording doesn't allocate and the stats can stay enabled in production.
+ * Must only be used from the server thread.
+ */
+public class DetectionStats {
+    /**
+     * Reasons for handlePositionChange to return before probing any blocks.
+     */
+    public enum ExitReason {
+        NO_GAME,
+        TICK_MODE,
+        NO_TEAM,
+        NO_TARGET
+    }
+
+    /**
+     * Upper bounds (exclusive) of the latency histogram buckets in nanoseconds.
+     * The last bucket holds everything above the last bound.
+     */
+    private static final long[] LATENCY_BOUNDS_NANOS = {1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000};
+    /**
+     * Upper bounds (exclusive) of the time to find histogram buckets in seconds.
+     */
+    private static final long[] FIND_TIME_BOUNDS_SECONDS = {10, 30, 60, 120, 300, 600};
+
+    private final long[] checksBySource = new long[DetectionSource.values().length];
+    private final long[] foundBySource = new long[DetectionSource.values().length];
+    private final long[] exitsByReason = new long[ExitReason.values().length];
+
+    private final long[] detectionLatency = new long[LATENCY_BOUNDS_NANOS.length + 1];
+    private long detectionCalls;
+    private long detectionTotalNanos;
+    private long detectionMaxNanos;
+
+    private final long[] foundLatency = new long[LATENCY_BOUNDS_NANOS.length + 1];
+    private long foundCalls;
+    private long foundTotalNanos;
+    private long foundMaxNanos;
+
+    private final long[] findTimes = new long[FIND_TIME_BOUNDS_SECONDS.length + 1];
+    private long finds;
+    private long findTotalMillis;
+    private long findMinMillis = Long.MAX_VALUE;
+    private long findMaxMillis;
+    private long roundStartNanos;
+
+    private long currentSecond;
+    private long callsInCurrentSecond;
+    private long callsInLastSecond;
+
+    /**
+     * Records a call to handlePositionChange that returned before probing any blocks.
+     *
+     * @param reason     Why the call returned early.
+     * @param startNanos The System.nanoTime() at the start of the call.
+     */
+    public void recordExit(ExitReason reason, long startNanos) {
+        exitsByReason[reason.ordinal()]++;
+        recordDetection(startNanos);
+    }
+
+    /**
+     * Records a call to handlePositionChange that probed the blocks around the player.
+     *
+     * @param source     The source of the position change.
+     * @param found      True if the player found their block.
+     * @param startNanos The System.nanoTime() at the start of the call.
+     */
+    public void recordProbe(DetectionSource source, boolean found, long startNanos) {
+        checksBySource[source.ordinal()]++;
+        if (found) {
+            foundBySource[source.ordinal()]++;
+        }
+        recordDetection(startNanos);
+    }
+
+    private void recordDetection(long startNanos) {
+        long now = System.nanoTime();
+        long nanos = now - startNanos;
+        detectionCalls++;
+        detectionTotalNanos += nanos;
+        detectionMaxNanos = Math.max(detectionMaxNanos, nanos);
+        detectionLatency[latencyBucket(nanos)]++;
+
+        long second = now / 1_000_000_000L;
+        if (second != currentSecond) {
+            callsInLastSecond = second == currentSecond + 1 ? callsInCurrentSecond : 0;
+            callsInCurrentSecond = 0;
+            currentSecond = second;
+        }
+        callsInCurrentSecond++;
+    }
+
+    /**
+     * Records a call to playerFoundBlock and the time since the start of the round.
+     *
+     * @param startNanos The System.nanoTime() at the start of the call.
+     */
+    public void recordFound(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        foundCalls++;
+        foundTotalNanos += nanos;
+        foundMaxNanos = Math.max(foundMaxNanos, nanos);
+        foundLatency[latencyBucket(nanos)]++;
+
+        long findMillis = (startNanos - roundStartNanos) / 1_000_000L;
+        finds++;
+        findTotalMillis += findMillis;
+        findMinMillis = Math.min(findMinMillis, findMillis);
+        findMaxMillis = Math.max(findMaxMillis, findMillis);
+        int bucket = 0;
+        while (bucket < FIND_TIME_BOUNDS_SECONDS.length && findMillis >= FIND_TIME_BOUNDS_SECONDS[bucket] * 1000) {
+            bucket++;
+        }
+        findTimes[bucket]++;
+    }
+
+    public void markRoundStart() {
+        roundStartNanos = System.nanoTime();
+    }
+
+    private static int latencyBucket(long nanos) {
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_NANOS.length && nanos >= LATENCY_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public long getChecks(DetectionSource source) {
+        return checksBySource[source.ordinal()];
+    }
+
+    public long getFound(DetectionSource source) {
+        return foundBySource[source.ordinal()];
+    }
+
+    public long getExits(ExitReason reason) {
+        return exitsByReason[reason.ordinal()];
+    }
+
+    public long getDetectionCalls() {
+        return detectionCalls;
+    }
+
+    public double getDetectionAverageMicros() {
+        return detectionCalls == 0 ? 0 : detectionTotalNanos / 1000.0 / detectionCalls;
+    }
+
+    public double getDetectionMaxMicros() {
+        return detectionMaxNanos / 1000.0;
+    }
+
+    /**
+     * Returns the amount of handlePositionChange calls in the last full second.
+     */
+    public long getCallsPerSecond() {
+        return System.nanoTime() / 1_000_000_000L > currentSecond + 1 ? 0 : callsInLastSecond;
+    }
+
+    public long getFoundCalls() {
+        return foundCalls;
+    }
+
+    public double getFoundAverageMicros() {
+        return foundCalls == 0 ? 0 : foundTotalNanos / 1000.0 / foundCalls;
+    }
+
+    public double getFoundMaxMicros() {
+        return foundMaxNanos / 1000.0;
+    }
+
+    public long getFinds() {
+        return finds;
+    }
+
+    public double getFindAverageSeconds() {
+        return finds == 0 ? 0 : findTotalMillis / 1000.0 / finds;
+    }
+
+    public double getFindMinSeconds() {
+        return finds == 0 ? 0 : findMinMillis / 1000.0;
+    }
+
+    public double getFindMaxSeconds() {
+        return findMaxMillis / 1000.0;
+    }
+
+    /**
+     * Formats the detection latency histogram, e.g. "<1µs: 10, <2µs: 4, ..., >=1000µs: 0".
+     */
+    public String formatDetectionHistogram() {
+        return formatHistogram(detectionLatency, LATENCY_BOUNDS_NANOS, 1000, "µs");
+    }
+
+    public String formatFoundHistogram() {
+        return formatHistogram(foundLatency, LATENCY_BOUNDS_NANOS, 1000, "µs");
+    }
+
+    public String formatFindTimeHistogram() {
+        return formatHistogram(findTimes, FIND_TIME_BOUNDS_SECONDS, 1, "s");
+    }
+
+    private static String formatHistogram(long[] buckets, long[] bounds, long divisor, String unit) {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < buckets.length; i++) {
+            if (i > 0) {
+                histogram.append(", ");
+            }
+            if (i < bounds.length) {
+                histogram.append('<').append(bounds[i] / divisor);
+            } else {
+                histogram.append(">=").append(bounds[bounds.length - 1] / divisor);
+            }
+            histogram.append(unit).append(": ").append(buckets[i]);
+        }
+        return histogram.toString();
+    }
+
+    public void reset() {
+        Arrays.fill(checksBySource, 0);
+        Arrays.fill(foundBySource, 0);
+        Arrays.fill(exitsByReason, 0);
+        Arrays.fill(detectionLatency, 0);
+        Arrays.fill(foundLatency, 0);
+        Arrays.fill(findTimes, 0);
+        detectionCalls = 0;
+        detectionTotalNanos = 0;
+        detectionMaxNanos = 0;
+        foundCalls = 0;
+        foundTotalNanos = 0;
+        foundMaxNanos = 0;
+        finds = 0;
+        findTotalMillis = 0;
+        findMinMillis = Long.MAX_VALUE;
+        findMaxMillis = 0;
+        callsInCurrentSecond = 0;
+        callsInLastSecond = 0;
+    }
+}
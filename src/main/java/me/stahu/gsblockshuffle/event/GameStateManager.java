@@ -2,10 +2,16 @@ package me.stahu.gsblockshuffle.event;
 
 import me.stahu.gsblockshuffle.GSBlockShuffle;
 import me.stahu.gsblockshuffle.gui.BossBarTimer;
+import me.stahu.gsblockshuffle.settings.BlockPool;
+import me.stahu.gsblockshuffle.settings.DistinctPackDraw;
+import me.stahu.gsblockshuffle.settings.ShuffleBag;
+import me.stahu.gsblockshuffle.team.Leaderboard;
+import me.stahu.gsblockshuffle.team.PlayerSession;
 import me.stahu.gsblockshuffle.team.TeamsManager;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.*;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.scoreboard.*;
@@ -28,9 +34,52 @@ public class GameStateManager {
     private int roundTickTask;
     private int roundBreakTickTask;
     private int roundStartTask;
+    private int detectionTickTask;
     public BossBarTimer bossBarTimer;
-    public Map<String, ArrayList<String>> playerBlockMap;
-    public HashSet<Player> playersWithFoundBlock = new HashSet<>();
+    /**
+     * Draws the blocks of the current game, seeded in startGame.
+     */
+    private SplittableRandom random = new SplittableRandom();
+    /**
+     * Packs already drawn in the current game, used when noRepeat is enabled.
+     */
+    private ShuffleBag shuffleBag = new ShuffleBag();
+    /**
+     * Reverse index of the targets in the player sessions: the names of players that still need to find each material.
+     * A material is only present while at least one player is waiting for it.
+     */
+    private final EnumMap<Material, HashSet<String>> waitingPlayersByMaterial = new EnumMap<>(Material.class);
+    /**
+     * Players that still need to find their block, checked round-robin when detectionMode is set to "tick".
+     * Every player with an assigned block is in the queue.
+     */
+    private final ArrayList<String> detectionQueue = new ArrayList<>();
+    /**
+     * Position of every player in detectionQueue, so a player is removed without searching the queue.
+     */
+    private final HashMap<String, Integer> detectionQueueIndex = new HashMap<>();
+    private int detectionCursor = 0;
+    /**
+     * True if targets are checked by detectionTick instead of the move events, read from detectionMode when a round
+     * starts so a change of the setting applies from the next round on.
+     */
+    private boolean tickDetection = false;
+    /**
+     * Teams with a member that hasn't found their block in this round, kept up to date on every find so the number of
+     * teams to eliminate doesn't require checking every player.
+     */
+    private final HashSet<Team> teamsWithMissingBlocks = new HashSet<>();
+    /**
+     * Maximum amount of blocks probed between two locations of a move event.
+     */
+    private static final int MAX_SWEEP_STEPS = 32;
+    public final DetectionStats detectionStats = new DetectionStats();
+    /**
+     * Side effects of blocks found during the current tick, flushed by flushFoundEvents.
+     */
+    private final ArrayList<String> pendingFoundMessages = new ArrayList<>();
+    private final ArrayList<Player> pendingFoundSounds = new ArrayList<>();
+    private int foundFlushTask = -1;
 
     public boolean setGameState(int gameState) {
         if (this.gameState == gameState) {
@@ -57,8 +106,6 @@ public class GameStateManager {
         this.teamsManager = teamsManager;
         this.bossBarTimer = bossBarTimer;
 
-        this.playerBlockMap = new HashMap<>();
-
         this.gameState = 0;
 
         this.settings = settings;
@@ -71,10 +118,18 @@ public class GameStateManager {
 
         teamsManager.setScoreboard();
         teamsManager.setShowScoreboard(true);
-        teamsManager.initializeTeamPointsMap();
+        teamsManager.initializeLeaderboard();
 
         roundsRemaining = settings.getInt("roundsPerGame");
 
+        long seed = settings.getLong("randomSeed", -1);
+        if (seed == -1) {
+            seed = new SplittableRandom().nextLong();
+        }
+        random = new SplittableRandom(seed);
+        shuffleBag = new ShuffleBag();
+        GSBlockShuffle.LOGGER.info("Game seed: " + seed);
+
         playRoundCountdownSound(plugin, settings, teamsManager);
 
         roundStartTask = Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, this::newRound, 40);
@@ -82,10 +137,8 @@ public class GameStateManager {
 
     public void newRound() {
         Bukkit.getScheduler().cancelTask(this.roundBreakTickTask);
-        playerBlockMap.clear();
-        playersWithFoundBlock.clear();
-        teamsManager.playerTpUsed.clear();
-        teamsManager.teamTpUsed.clear();
+        clearAssignedBlocks();
+        teamsManager.resetRound();
         bossBarTimer.clearBossBars();
 
         //create compass based on seting "showTeamCompass"
@@ -96,12 +149,20 @@ public class GameStateManager {
         }
 
         assignRandomBlocks();
+        teamsWithMissingBlocks.clear();
+        teamsWithMissingBlocks.addAll(teamsManager.teams);
+        detectionStats.markRoundStart();
 
         currentRound++;
         roundsRemaining--;
         bossBarTimer.createBossBar();
         secondsLeft = settings.getInt("roundTime");
         roundTickTask = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, this::roundTick, 0, 20);
+        Bukkit.getScheduler().cancelTask(this.detectionTickTask);
+        tickDetection = Objects.equals(settings.getString("detectionMode"), "tick");
+        if (tickDetection) {
+            detectionTickTask = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, this::detectionTick, 1, 1);
+        }
     }
 
     private void roundTick() {
@@ -113,9 +174,10 @@ public class GameStateManager {
 
         bossBarTimer.updateBossBar(progress, secondsLeft);
         //display actionbar title for everyone with a block
-        for (Player player : teamsManager.getPlayersWithATeam()) {
-            if (playerBlockMap.get(player.getName()) != null) {
-                player.spigot().sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(ChatColor.GOLD + playerBlockMap.get(player.getName()).get(0).replace("_", " ")));
+        for (Player player : teamsManager.getOnlineParticipants()) {
+            ArrayList<String> blockNames = teamsManager.getSession(player).getBlockNames();
+            if (blockNames != null) {
+                player.spigot().sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(ChatColor.GOLD + blockNames.get(0).replace("_", " ")));
             }
         }
         if (secondsLeft < 61) {
@@ -125,13 +187,16 @@ public class GameStateManager {
 
     public void endRound() {
         Bukkit.getScheduler().cancelTask(this.roundTickTask);
+        Bukkit.getScheduler().cancelTask(this.detectionTickTask);
+        flushFoundEvents();
         HashSet<Team> teamsToEliminate = getTeamsToEliminate();
+        boolean gameEnding = isGameEnding(teamsToEliminate.size());
 
         // block not found sound
         for (Team team : teamsManager.teams) {
             for (String playerName : team.getEntries()) {
                 Player player = Bukkit.getPlayer(playerName);
-                if (!playersWithFoundBlock.contains(player) && !isGameEnding(false)
+                if (!hasFoundBlock(playerName) && !gameEnding
                         && !settings.getBoolean("eliminateAfterRound")) {
                     playBlockFoundSound(plugin, settings, player, false);
                 }
@@ -140,7 +205,7 @@ public class GameStateManager {
 
         // eliminate teams
         for (Team team : teamsToEliminate) {
-            if (!(isGameEnding(false) && teamsManager.isTeamWinning(team))) {
+            if (!(gameEnding && teamsManager.isTeamWinning(team))) {
                 for (String playerName : team.getEntries()) {
                     Player player = Bukkit.getPlayer(playerName);
                     showEliminatedTitle(settings, player);
@@ -154,12 +219,12 @@ public class GameStateManager {
             teamsManager.eliminateTeam(team);
         }
 
-        if (isGameEnding(true)) {
+        if (isGameEnding(0)) {
             setGameState(0);
             return;
         }
 
-        playerBlockMap.clear();
+        clearAssignedBlocks();
         increaseDifficulty();
 
         roundBreak();
@@ -206,44 +271,46 @@ public class GameStateManager {
      * Ends the game and sends a message to all online players.
      * This method constructs a message indicating the end of the game and the final scores of each team.
      * The message is then sent to all online players.
-     * Note: The getTeamScore method is used to retrieve the score of each team.
+     * Note: The places and scores of the teams are taken from the leaderboard of the TeamsManager.
      */
     public void endGame() {
         Bukkit.getScheduler().cancelTask(this.roundStartTask);
         Bukkit.getScheduler().cancelTask(this.roundBreakTickTask);
         Bukkit.getScheduler().cancelTask(this.roundTickTask);
+        Bukkit.getScheduler().cancelTask(this.detectionTickTask);
+        flushFoundEvents();
 
-        List<Map.Entry<Team, Integer>> teamPlaceList = teamsManager.getTeamPlaceList();
+        List<Leaderboard.Place> places = teamsManager.getLeaderboard().getPlaces();
         List<String> winningTeamNames = new ArrayList<>();
 
         // get winning teams
-        for(Map.Entry<Team, Integer> entry : teamPlaceList) {
-            if (entry.getValue() != 1) {
+        for (Leaderboard.Place place : places) {
+            if (place.place() != 1) {
                 break;
             }
-            winningTeamNames.add(entry.getKey().getDisplayName());
+            winningTeamNames.add(place.team().getDisplayName());
         }
 
         // TODO resolve block not found and elimination sound conflict
         // show splash titles
-        for (Map.Entry<Team, Integer> entry : teamPlaceList) {
-            if (entry.getValue() == 1) {
-                for (String playerName : entry.getKey().getEntries()) {
+        for (Leaderboard.Place place : places) {
+            if (place.place() == 1) {
+                for (String playerName : place.team().getEntries()) {
                     Player player = Bukkit.getPlayer(playerName);
                     showYouWonTitle(settings, player);
                     playWinnerSound(plugin, settings, player);
                 }
             } else {
-                for (String playerName : entry.getKey().getEntries()) {
+                for (String playerName : place.team().getEntries()) {
                     Player player = Bukkit.getPlayer(playerName);
                     showPlayerWonTitle(settings, player, winningTeamNames);
                 }
             }
         }
 
-        sendEndGameMessageToAllPlayers(teamPlaceList);
+        sendEndGameMessageToAllPlayers(places);
 
-        playerBlockMap.clear();
+        clearAssignedBlocks();
         plugin.teammateCompass.clearCompassBars();
         bossBarTimer.clearBossBars();
         teamsManager.clearScoreboards();
@@ -255,15 +322,15 @@ public class GameStateManager {
      * The positions in the leaderboard follow the ex aequo rule, which means that teams with the same score get the same place.
      * If two or more teams share a place, the next rank(s) is/are skipped.
      *
-     * @param teamPlaceList A list of teams and their final scores, sorted by score in descending order.
+     * @param places A list of teams with their places and final scores, sorted by score in descending order.
      */
-    private void sendEndGameMessageToAllPlayers(List<Map.Entry<Team, Integer>> teamPlaceList) {
+    private void sendEndGameMessageToAllPlayers(List<Leaderboard.Place> places) {
         StringBuilder endMessage = new StringBuilder("Game ended!\n" + " Final scores:");
 
-        for (Map.Entry<Team, Integer> entry : teamPlaceList) {
-            Team team = entry.getKey();
-            int rank = entry.getValue();
-            int currentScore = teamsManager.getTeamScore(team);
+        for (Leaderboard.Place place : places) {
+            Team team = place.team();
+            int rank = place.place();
+            int currentScore = place.score();
 
             ChatColor rankColor = switch (rank) {
                 case 1 -> ChatColor.GOLD;
@@ -286,12 +353,15 @@ public class GameStateManager {
      * If the block assignment mode is incorrectly set, an error message is printed and the game ends.
      * "onePerPlayer": each player in each team is assigned a random block.
      * "onePerTeam": each team is assigned a random block, and all players in the team are assigned the same block.
+     * With uniquePerTeam every team gets a different block as long as the pool has enough blocks.
      * "onePerRound": a random block is assigned to all players in all teams.
      * After the block is assigned, the player is sent a message with the name of their block.
      */
     private void assignRandomBlocks() {
         String blockAssignmentMode = settings.getString("blockAssignmentMode");
+        int element;
         ArrayList<String> blockNames = null;
+        EnumSet<Material> targets = null;
         String blockName;
         List<String> blockAssignmentModes;
         blockAssignmentModes = List.of("onePerPlayer", "onePerTeam", "onePerRound");
@@ -303,53 +373,135 @@ public class GameStateManager {
             return;
         }
 
-        ArrayList<ArrayList<ArrayList<String>>> blockList = plugin.categoryTree.getBlockList(settings);
+        BlockPool blockPool = plugin.categoryTree.getBlockPool(settings);
+        DistinctPackDraw teamDraw = null;
+        if (Objects.equals(blockAssignmentMode, "onePerTeam") && settings.getBoolean("uniquePerTeam", false)) {
+            // the shuffle bag starts over once the pool is used up, which could repeat a block within the round
+            teamDraw = new DistinctPackDraw(blockPool, settings.getBoolean("noRepeat", false) ? shuffleBag : null);
+        }
 
         if (Objects.equals(blockAssignmentMode, "onePerRound")) {
-            blockNames = getRandomBlock(blockList);
+            element = drawElement(blockPool);
+            blockNames = blockPool.getBlockNames(element);
+            targets = blockPool.getTargets(element);
         }
         for (Team team : teamsManager.teams) {
             if (Objects.equals(blockAssignmentMode, "onePerTeam")) {
-                blockNames = getRandomBlock(blockList);
+                element = teamDraw != null ? teamDraw.drawElement(random) : drawElement(blockPool);
+                blockNames = blockPool.getBlockNames(element);
+                targets = blockPool.getTargets(element);
             }
             for (String playerName : team.getEntries()) {
+                Player player = Bukkit.getPlayerExact(playerName);
+                // offline entries get no block
+                if (player == null) {
+                    continue;
+                }
                 if (Objects.equals(blockAssignmentMode, "onePerPlayer")) {
-                    blockNames = getRandomBlock(blockList);
+                    element = drawElement(blockPool);
+                    blockNames = blockPool.getBlockNames(element);
+                    targets = blockPool.getTargets(element);
                 }
-                assignBlockToPlayer(playerName, blockNames);
-                Player player = Bukkit.getPlayer(playerName);
+                assignBlockToPlayer(player, blockNames, targets);
                 assert blockNames != null;
                 blockName = blockNames.get(0);
                 blockName = blockName.replaceAll("_", " ");
-                assert player != null;
                 plugin.sendMessage(player, "Your block is: " + ChatColor.GOLD + blockName);
             }
         }
     }
 
-    public ArrayList<String> getRandomBlock(ArrayList<ArrayList<ArrayList<String>>> blockList) {
-        Random random = new Random();
-
-        if (blockList.isEmpty()) {
-            throw new IllegalArgumentException("Block list is empty");
+    /**
+     * Draws an element from the pool, without repeating packs within the game if noRepeat is enabled.
+     *
+     * @param blockPool The pool to draw from.
+     * @return The index of the element in the compiled category tree.
+     */
+    private int drawElement(BlockPool blockPool) {
+        if (settings.getBoolean("noRepeat", false)) {
+            return shuffleBag.drawElement(blockPool, random);
         }
-
-        ArrayList<ArrayList<String>> block = blockList.get(random.nextInt(blockList.size()));
-
-        // Return random variant of the block
-        return block.get(random.nextInt(block.size()));
+        return blockPool.drawElement(random);
     }
 
     /**
      * Assigns a block to a player.
-     * This method adds the player's name and the list of block names to the playerBlockMap.
+     * This method stores the list of block names and the resolved materials in the player's session
+     * and adds the player to the detection indexes.
      *
-     * @param playerName    The name of the player to whom the block will be assigned.
+     * @param player        The player to whom the block will be assigned.
      * @param blockNameList The list of block names to be assigned to the player.
+     * @param targets       The materials resolved from blockNameList.
+     */
+    private void assignBlockToPlayer(Player player, ArrayList<String> blockNameList, EnumSet<Material> targets) {
+        String playerName = player.getName();
+        teamsManager.getSession(player).assignBlock(blockNameList, targets);
+        for (Material material : targets) {
+            waitingPlayersByMaterial.computeIfAbsent(material, k -> new HashSet<>()).add(playerName);
+        }
+        if (detectionQueueIndex.putIfAbsent(playerName, detectionQueue.size()) == null) {
+            detectionQueue.add(playerName);
+        }
+        GSBlockShuffle.LOGGER.fine(playerName + " got " + blockNameList);
+    }
+
+    private void removeAssignedBlock(String playerName) {
+        PlayerSession session = teamsManager.getSession(playerName);
+        EnumSet<Material> targets = session == null ? null : session.getTargets();
+        if (session != null) {
+            session.clearBlock();
+        }
+        if (targets != null) {
+            for (Material material : targets) {
+                HashSet<String> waitingPlayers = waitingPlayersByMaterial.get(material);
+                if (waitingPlayers != null && waitingPlayers.remove(playerName) && waitingPlayers.isEmpty()) {
+                    waitingPlayersByMaterial.remove(material);
+                }
+            }
+        }
+
+        removeFromDetectionQueue(playerName);
+    }
+
+    /**
+     * Removes a player from the detection queue by moving another player into their position.
+     * Players before the cursor were already checked in the current pass, players from the cursor on weren't, the
+     * moves keep every player on their side of the cursor.
      */
-    private void assignBlockToPlayer(String playerName, ArrayList<String> blockNameList) {
-        playerBlockMap.put(playerName, blockNameList);
-        System.out.println(playerName + " got " + blockNameList);
+    private void removeFromDetectionQueue(String playerName) {
+        Integer queueIndex = detectionQueueIndex.remove(playerName);
+        if (queueIndex == null) {
+            return;
+        }
+        int lastIndex = detectionQueue.size() - 1;
+        if (queueIndex < detectionCursor) {
+            // the last checked player takes the free position, the last player takes theirs
+            detectionCursor--;
+            moveInDetectionQueue(detectionCursor, queueIndex);
+            moveInDetectionQueue(lastIndex, detectionCursor);
+        } else {
+            moveInDetectionQueue(lastIndex, queueIndex);
+        }
+        detectionQueue.remove(lastIndex);
+    }
+
+    private void moveInDetectionQueue(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        String playerName = detectionQueue.get(from);
+        detectionQueue.set(to, playerName);
+        detectionQueueIndex.put(playerName, to);
+    }
+
+    private void clearAssignedBlocks() {
+        for (PlayerSession session : teamsManager.getSessions()) {
+            session.clearBlock();
+        }
+        waitingPlayersByMaterial.clear();
+        detectionQueue.clear();
+        detectionQueueIndex.clear();
+        detectionCursor = 0;
     }
 
     /**
@@ -360,6 +512,12 @@ public class GameStateManager {
      * @param player The player who has found a block.
      */
     public void playerFoundBlock(Player player) {
+        long startNanos = System.nanoTime();
+        handleFoundBlock(player);
+        detectionStats.recordFound(startNanos);
+    }
+
+    private void handleFoundBlock(Player player) {
         boolean firstToWin = settings.getBoolean("firstToWin");
         boolean allPlayersRequiredForTeamWin = settings.getBoolean("allPlayersRequiredForTeamWin");
         boolean teamScoreIncrementPerPlayer = settings.getBoolean("teamScoreIncrementPerPlayer");
@@ -373,8 +531,7 @@ public class GameStateManager {
         } else {
             // else check if teamscore already incremented
             for (String playerName : team.getEntries()) {
-                Player p = Bukkit.getPlayer(playerName);
-                if (playersWithFoundBlock.contains(p)) {
+                if (hasFoundBlock(playerName)) {
                     teamFoundBlock = true;
                     break;
                 }
@@ -384,19 +541,25 @@ public class GameStateManager {
             }
         }
 
-        playersWithFoundBlock.add(player);
+        PlayerSession session = teamsManager.getSession(player);
+        session.setFoundBlock(true);
 
-        // block found message
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            plugin.sendMessage(p, player.getDisplayName() + " has found their block! (" + ChatColor.GOLD
-                    + playerBlockMap.get(player.getName()).get(0).replace("_", " ") + ChatColor.RESET + ")");
-        }
+        // block found message, sent together with other blocks found in this tick
+        pendingFoundMessages.add(player.getDisplayName() + " (" + ChatColor.GOLD
+                + session.getBlockNames().get(0).replace("_", " ") + ChatColor.RESET + ")");
 
-        playerBlockMap.remove(player.getName());
+        removeAssignedBlock(player.getName());
+        if (teamsWithMissingBlocks.contains(team) && team.getEntries().stream().allMatch(this::hasFoundBlock)) {
+            teamsWithMissingBlocks.remove(team);
+        }
 
         // avoid sound collision with win sound if player is in winning team
-        if (teamsManager.isTeamWinning(team) && !isGameEnding(false)) {
-            playBlockFoundSound(plugin, settings, player, true);
+        if (teamsManager.isTeamWinning(team) && !isGameEnding(countTeamsToEliminate())) {
+            pendingFoundSounds.add(player);
+        }
+
+        if (foundFlushTask == -1) {
+            foundFlushTask = Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, this::flushFoundEvents);
         }
 
         // if firstToWin endRound
@@ -404,14 +567,17 @@ public class GameStateManager {
             // if not allPlayersRequiredForTeamWin set teammates block to found
             if (!allPlayersRequiredForTeamWin) {
                 for (String playerName : team.getEntries()) {
-                    playersWithFoundBlock.add(Bukkit.getPlayer(playerName));
-                    playerBlockMap.remove(playerName);
+                    PlayerSession teammateSession = teamsManager.getSession(playerName);
+                    if (teammateSession != null) {
+                        teammateSession.setFoundBlock(true);
+                    }
+                    removeAssignedBlock(playerName);
                 }
                 endRound();
                 return;
             }
             for (String playerName : team.getEntries()) {
-                if (!playersWithFoundBlock.contains(Bukkit.getPlayer(playerName))) {
+                if (!hasFoundBlock(playerName)) {
                     return;
                 }
             }
@@ -419,11 +585,51 @@ public class GameStateManager {
             return;
         }
         // if no players left - endRound
-        if (playerBlockMap.isEmpty()) {
+        if (detectionQueue.isEmpty()) {
             endRound();
         }
     }
 
+    /**
+     * Sends the side effects of all blocks found since the last flush at once:
+     * one scoreboard update, one aggregated block found message and the block found sounds.
+     * Runs at the start of the tick after a block was found, or when the round ends.
+     */
+    private void flushFoundEvents() {
+        Bukkit.getScheduler().cancelTask(foundFlushTask);
+        foundFlushTask = -1;
+
+        teamsManager.updateScoreboardIfChanged();
+
+        if (!pendingFoundMessages.isEmpty()) {
+            String message = joinNames(pendingFoundMessages)
+                    + (pendingFoundMessages.size() == 1 ? " has found their block!" : " have found their blocks!");
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                plugin.sendMessage(p, message);
+            }
+        }
+        for (Player player : pendingFoundSounds) {
+            playBlockFoundSound(plugin, settings, player, true);
+        }
+
+        pendingFoundMessages.clear();
+        pendingFoundSounds.clear();
+    }
+
+    /**
+     * Joins names into a single list ("A", "A and B", "A, B and C").
+     */
+    private static String joinNames(List<String> names) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                joined.append(i == names.size() - 1 ? " and " : ", ");
+            }
+            joined.append(names.get(i));
+        }
+        return joined.toString();
+    }
+
     private HashSet<Team> getTeamsToEliminate() {
         int membersWithoutBlock;
         HashSet<Team> eliminatedTeams = new HashSet<>();
@@ -433,8 +639,7 @@ public class GameStateManager {
         for (Team team : teamsManager.teams) {
             membersWithoutBlock = 0;
             for (String playerName : team.getEntries()) {
-                Player player = Bukkit.getPlayer(playerName);
-                if (!playersWithFoundBlock.contains(player)) {
+                if (!hasFoundBlock(playerName)) {
                     // you did not find your block
                     if (eliminateAfterRound) {
                         membersWithoutBlock++;
@@ -449,6 +654,27 @@ public class GameStateManager {
         return eliminatedTeams;
     }
 
+    /**
+     * @return The number of teams getTeamsToEliminate would return, taken from the teams with missing blocks.
+     */
+    private int countTeamsToEliminate() {
+        if (!settings.getBoolean("eliminateAfterRound") && !settings.getBoolean("allPlayersRequiredForTeamWin")) {
+            return 0;
+        }
+        // teams can be removed or eliminated during the round
+        teamsWithMissingBlocks.retainAll(teamsManager.teams);
+        return teamsWithMissingBlocks.size();
+    }
+
+    /**
+     * @param playerName The name of a player.
+     * @return True if the player is online and has found their block in this round.
+     */
+    private boolean hasFoundBlock(String playerName) {
+        PlayerSession session = teamsManager.getSession(playerName);
+        return session != null && session.hasFoundBlock();
+    }
+
     private void increaseDifficulty() {
         if (settings.getBoolean("increaseDifficulty")
                 && (settings.getInt("difficulty") < Math.min(settings.getInt("difficultyCap"), 1000))) {
@@ -469,59 +695,222 @@ public class GameStateManager {
         }
     }
 
-    public void handlePlayerMove(Player player) {
+    /**
+     * Shared entry point of target detection for every change of a player's position.
+     * If the previous location is known, the blocks the player passed between the two locations are checked too,
+     * so fast moving players (elytra, boats, ice) don't skip over their block.
+     * In tick detection mode, only checks coming from detectionTick are handled.
+     *
+     * @param player The player whose position changed.
+     * @param from   The location the player moved from, or null if the path is unknown (teleports, respawns, joins).
+     * @param to     The new location of the player.
+     * @param source The kind of the position change.
+     */
+    public void handlePositionChange(Player player, Location from, Location to, DetectionSource source) {
+        long startNanos = System.nanoTime();
+
         if (gameState == 0) {
+            detectionStats.recordExit(DetectionStats.ExitReason.NO_GAME, startNanos);
+            return;
+        }
+        // targets are checked by detectionTick
+        if (source != DetectionSource.TICK && tickDetection) {
+            detectionStats.recordExit(DetectionStats.ExitReason.TICK_MODE, startNanos);
             return;
         }
-
-        String playerName = player.getName();
-        Location playerLocation = player.getLocation();
 
         if (teamsManager.isPlayerInNoTeam(player)) {
+            detectionStats.recordExit(DetectionStats.ExitReason.NO_TEAM, startNanos);
             return;
         }
-        if (playerBlockMap.get(playerName) == null) {
+        EnumSet<Material> targets = teamsManager.getSession(player).getTargets();
+        if (targets == null) {
+            detectionStats.recordExit(DetectionStats.ExitReason.NO_TARGET, startNanos);
             return;
         }
 
-        for (String blockName : playerBlockMap.get(playerName)) {
-            Material playerBlock = Material.getMaterial(blockName);
-            if (playerBlock == playerLocation.getBlock().getType() || playerBlock == playerLocation.getBlock().getRelative(0, -1, 0).getType()) {
-                playerFoundBlock(player);
-            }
+        boolean found = probe(from, to, targets);
+        // playerFoundBlock is measured separately
+        detectionStats.recordProbe(source, found, startNanos);
+        if (found) {
+            playerFoundBlock(player);
         }
     }
 
-    // TODO optimize
-    private void incrementDifficulty() {
-        int previousDifficulty = settings.getInt("difficulty");
+    /**
+     * Checks if the player reached one of the targets when moving to a location.
+     * The location is probed directly because during events the player's location is not updated yet.
+     *
+     * @param from    The location the player moved from, or null if the path is unknown.
+     * @param to      The new location of the player.
+     * @param targets The materials to look for.
+     * @return True if one of the targets was found.
+     */
+    private boolean probe(Location from, Location to, EnumSet<Material> targets) {
+        if (from != null && from.getWorld() == to.getWorld() && sweepPath(from, to, targets)) {
+            return true;
+        }
+        return isTargetAt(to.getBlock(), targets);
+    }
 
-        settings.set("difficulty", settings.getInt("difficulty") + 1);
+    /**
+     * Walks the blocks crossed by the line between two locations at foot level (3D DDA),
+     * skipping the block of the starting location which was checked by the previous move,
+     * and the block of the end location which is checked separately.
+     * At most MAX_SWEEP_STEPS blocks are probed.
+     *
+     * @param from    The start of the path.
+     * @param to      The end of the path.
+     * @param targets The materials to look for.
+     * @return True if one of the crossed blocks, or the block under it, is one of the targets.
+     */
+    private boolean sweepPath(Location from, Location to, EnumSet<Material> targets) {
+        World world = to.getWorld();
+        double x0 = from.getX();
+        double y0 = from.getY();
+        double z0 = from.getZ();
+        double dx = to.getX() - x0;
+        double dy = to.getY() - y0;
+        double dz = to.getZ() - z0;
+
+        int x = from.getBlockX();
+        int y = from.getBlockY();
+        int z = from.getBlockZ();
+        int endX = to.getBlockX();
+        int endY = to.getBlockY();
+        int endZ = to.getBlockZ();
+
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        int stepZ = dz > 0 ? 1 : (dz < 0 ? -1 : 0);
+
+        // distance along the path (0 - 1) needed to cross one block on each axis
+        double tDeltaX = stepX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+        double tDeltaY = stepY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+        double tDeltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dz);
+        // distance along the path to the next block boundary on each axis
+        double tMaxX = stepX == 0 ? Double.POSITIVE_INFINITY : (stepX > 0 ? x + 1 - x0 : x0 - x) * tDeltaX;
+        double tMaxY = stepY == 0 ? Double.POSITIVE_INFINITY : (stepY > 0 ? y + 1 - y0 : y0 - y) * tDeltaY;
+        double tMaxZ = stepZ == 0 ? Double.POSITIVE_INFINITY : (stepZ > 0 ? z + 1 - z0 : z0 - z) * tDeltaZ;
+
+        for (int i = 0; i < MAX_SWEEP_STEPS; i++) {
+            if (tMaxX <= tMaxY && tMaxX <= tMaxZ) {
+                if (tMaxX > 1) {
+                    return false;
+                }
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY <= tMaxZ) {
+                if (tMaxY > 1) {
+                    return false;
+                }
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                if (tMaxZ > 1) {
+                    return false;
+                }
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+
+            if (x == endX && y == endY && z == endZ) {
+                return false;
+            }
+            if (isTarget(world.getBlockAt(x, y, z).getType(), targets)
+                    || isTarget(world.getBlockAt(x, y - 1, z).getType(), targets)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        ArrayList<ArrayList<ArrayList<String>>> blockList = plugin.categoryTree.getBlockList(settings);
+    /**
+     * Checks the blocks under a part of the players that still need to find their block.
+     * Players are checked round-robin, so every player is checked at least once every "detectionTickStride" ticks,
+     * but no more than "detectionMaxPlayersPerTick" players are checked in a single tick.
+     */
+    private void detectionTick() {
+        int waitingPlayers = detectionQueue.size();
+        if (waitingPlayers == 0) {
+            return;
+        }
+        int stride = Math.max(1, settings.getInt("detectionTickStride", 1));
+        int maxPlayersPerTick = settings.getInt("detectionMaxPlayersPerTick", 20);
 
-        while (blockList.isEmpty()
-                && (settings.getInt("difficulty") < Math.min(settings.getInt("difficultyCap"), 1000))) {
-            settings.set("difficulty", settings.getInt("difficulty") + 1);
-            blockList = plugin.categoryTree.getBlockList(settings);
+        int playersThisTick = (waitingPlayers + stride - 1) / stride;
+        if (maxPlayersPerTick > 0) {
+            playersThisTick = Math.min(playersThisTick, maxPlayersPerTick);
         }
 
-        if (blockList.isEmpty()) {
-            settings.set("difficulty", previousDifficulty);
+        // the queue shrinks (or is cleared when the round ends) as players find their blocks
+        for (int i = 0; i < playersThisTick && !detectionQueue.isEmpty(); i++) {
+            if (detectionCursor >= detectionQueue.size()) {
+                detectionCursor = 0;
+            }
+            Player player = Bukkit.getPlayerExact(detectionQueue.get(detectionCursor++));
+            if (player != null) {
+                handlePositionChange(player, null, player.getLocation(), DetectionSource.TICK);
+            }
         }
     }
 
-    private boolean isGameEnding(boolean teamsEliminated) {
-        boolean endGameIfOneTeamRemaining = settings.getBoolean("endGameIfOneTeamRemaining");
-        int teamsSizeAfterElimination = teamsManager.teams.size();
+    /**
+     * Checks if the block, or the block under it, is one of the targets.
+     */
+    private boolean isTargetAt(Block block, EnumSet<Material> targets) {
+        return isTarget(block.getType(), targets) || isTarget(block.getRelative(0, -1, 0).getType(), targets);
+    }
 
-//        System.out.println("Teams eliminated: " + teamsEliminated);
-//        System.out.println("Teams to eliminate: " + getTeamsToEliminate().size());
+    /**
+     * The targets are an EnumSet, so this is a single bit test.
+     */
+    private boolean isTarget(Material material, EnumSet<Material> targets) {
+        return targets.contains(material);
+    }
 
-        if (!teamsEliminated) {
-            teamsSizeAfterElimination -= getTeamsToEliminate().size();
+    /**
+     * Returns the names of players that still need to find the given material.
+     *
+     * @param material The material to look up.
+     * @return Unmodifiable set of player names, empty if no one is waiting for the material.
+     */
+    public Set<String> getPlayersWaitingFor(Material material) {
+        HashSet<String> waitingPlayers = waitingPlayersByMaterial.get(material);
+        return waitingPlayers == null ? Collections.emptySet() : Collections.unmodifiableSet(waitingPlayers);
+    }
+
+    /**
+     * Returns the materials that at least one player still needs to find.
+     *
+     * @return Unmodifiable set of materials.
+     */
+    public Set<Material> getWaitedForMaterials() {
+        return Collections.unmodifiableSet(waitingPlayersByMaterial.keySet());
+    }
+
+    /**
+     * This method raises the difficulty to the next difficulty with a non-empty block pool, not going above
+     * difficultyCap. The difficulty is left unchanged if there is no such difficulty.
+     */
+    private void incrementDifficulty() {
+        int previousDifficulty = settings.getInt("difficulty");
+        int difficultyLimit = Math.max(previousDifficulty + 1, Math.min(settings.getInt("difficultyCap"), 1000));
+
+        int difficulty = plugin.categoryTree.getDifficultyIndex(settings).getNextNonEmptyDifficulty(previousDifficulty + 1);
+
+        if (difficulty != -1 && difficulty <= difficultyLimit) {
+            settings.set("difficulty", difficulty);
         }
-//        System.out.println("Teams size: " + teamsSizeAfterElimination);
+    }
+
+    /**
+     * @param teamsToEliminate The number of teams that are still to be eliminated this round, 0 once they have been.
+     * @return True if the game ends after this round.
+     */
+    private boolean isGameEnding(int teamsToEliminate) {
+        boolean endGameIfOneTeamRemaining = settings.getBoolean("endGameIfOneTeamRemaining");
+        int teamsSizeAfterElimination = teamsManager.teams.size() - teamsToEliminate;
 
         if (teamsSizeAfterElimination == 0) {
             return true;
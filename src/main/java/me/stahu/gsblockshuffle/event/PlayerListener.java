@@ -3,15 +3,20 @@ package me.stahu.gsblockshuffle.event;
 import me.stahu.gsblockshuffle.GSBlockShuffle;
 import me.stahu.gsblockshuffle.gui.TeammateCompass;
 import me.stahu.gsblockshuffle.team.TeamsManager;
-import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 public class PlayerListener implements Listener {
     private final GameStateManager gameStateManager;
@@ -19,6 +24,14 @@ public class PlayerListener implements Listener {
     private final TeammateCompass teammateCompass;
     private final YamlConfiguration settings;
     private final GSBlockShuffle plugin;
+    /**
+     * Amount of move events that did not change the block the player is in and skipped target detection.
+     */
+    private long filteredMoveEvents = 0;
+    /**
+     * Amount of move events that were passed to target detection.
+     */
+    private long processedMoveEvents = 0;
 
     public PlayerListener(YamlConfiguration settings, GSBlockShuffle plugin, GameStateManager gameStateManager, TeamsManager teamsManager, TeammateCompass teammateCompass) {
         this.gameStateManager = gameStateManager;
@@ -30,12 +43,79 @@ public class PlayerListener implements Listener {
 
     @EventHandler
     public void onPlayerMoveEvent(PlayerMoveEvent event) {
-        gameStateManager.handlePlayerMove(event.getPlayer());
+        // head rotations and movement inside the same block can't change the block under the player
+        if (hasChangedBlock(event.getFrom(), event.getTo())) {
+            processedMoveEvents++;
+            gameStateManager.handlePositionChange(event.getPlayer(), event.getFrom(), event.getTo(), DetectionSource.MOVE);
+        } else {
+            filteredMoveEvents++;
+        }
+
+        //only the mover's compass and the compasses pointing at the mover can change, the compasses only use x and z
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        boolean positionChanged = to != null && (from.getX() != to.getX() || from.getZ() != to.getZ());
+        teammateCompass.markMoved(event.getPlayer(), positionChanged);
+    }
 
-        //update the compass for everyone
-        for (Player serverPlayer : Bukkit.getOnlinePlayers()) {
-            teammateCompass.updateCompass(serverPlayer);
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleportEvent(PlayerTeleportEvent event) {
+        if (event.getTo() == null) {
+            return;
         }
+        gameStateManager.handlePositionChange(event.getPlayer(), null, event.getTo(), DetectionSource.TELEPORT);
+        teammateCompass.markMoved(event.getPlayer(), true);
+    }
+
+    @EventHandler
+    public void onVehicleMoveEvent(VehicleMoveEvent event) {
+        // passengers don't fire move events, so their compasses have to be refreshed here
+        boolean changedBlock = hasChangedBlock(event.getFrom(), event.getTo());
+        for (Entity passenger : event.getVehicle().getPassengers()) {
+            if (passenger instanceof Player player) {
+                if (changedBlock) {
+                    gameStateManager.handlePositionChange(player, event.getFrom(), event.getTo(), DetectionSource.VEHICLE);
+                }
+                teammateCompass.markMoved(player, true);
+            }
+        }
+    }
+
+    @EventHandler
+    public void onPlayerRespawnEvent(PlayerRespawnEvent event) {
+        gameStateManager.handlePositionChange(event.getPlayer(), null, event.getRespawnLocation(), DetectionSource.RESPAWN);
+        teammateCompass.markMoved(event.getPlayer(), true);
+    }
+
+    /**
+     * Checks if the player has entered a new block between two locations.
+     * Only the integer block coordinates and the world are compared.
+     *
+     * @param from The location the player moved from.
+     * @param to   The location the player moved to.
+     * @return True if the locations are in different blocks, false otherwise.
+     */
+    private boolean hasChangedBlock(Location from, Location to) {
+        if (to == null) {
+            return false;
+        }
+        return from.getBlockX() != to.getBlockX()
+                || from.getBlockY() != to.getBlockY()
+                || from.getBlockZ() != to.getBlockZ()
+                || from.getWorld() != to.getWorld();
+    }
+
+    public long getFilteredMoveEvents() {
+        return filteredMoveEvents;
+    }
+
+    public long getProcessedMoveEvents() {
+        return processedMoveEvents;
+    }
+
+    public void resetMoveEventCounters() {
+        filteredMoveEvents = 0;
+        processedMoveEvents = 0;
     }
 
     @EventHandler
@@ -56,6 +136,8 @@ public class PlayerListener implements Listener {
         } else {
             plugin.teammateCompass.clearCompassBars();
         }
+
+        gameStateManager.handlePositionChange(player, null, player.getLocation(), DetectionSource.JOIN);
     }
 
     //Disable PvP
@@ -22,14 +22,14 @@ public class BossBarTimer {
      */
     public void createBossBar() {
         BossBar bossBar = Bukkit.createBossBar("Something might've failed.", BarColor.GREEN, BarStyle.SOLID);
-        for (Player player : teamsManager.getPlayersWithATeam()) {
+        for (Player player : teamsManager.getOnlineParticipants()) {
             bossBar.addPlayer(player);
         }
         this.bossBar = bossBar;
     }
 
     public void reAddPlayersToBossBar() {
-        for (Player player : teamsManager.getPlayersWithATeam()) {
+        for (Player player : teamsManager.getOnlineParticipants()) {
             bossBar.addPlayer(player);
         }
     }
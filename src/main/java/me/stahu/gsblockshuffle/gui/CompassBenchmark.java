@@ -0,0 +1,110 @@
+package me.stahu.gsblockshuffle.gui;
+
+import me.stahu.gsblockshuffle.team.TeamsManager;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Team;
+import org.bukkit.util.Vector;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Microbenchmark for the compass renderer, it only exists for /bs debug compassBench. It measures the heap allocated
+ * and the time spent per render of the precomputed renderer and of a condensed copy of the string building renderer
+ * it replaced, which serves as the baseline.
+ * It runs on the server thread, so the number of renders is capped at MAX_ITERATIONS.
+ */
+public class CompassBenchmark {
+    public static final int MAX_ITERATIONS = 20_000;
+    private static final String compassBarString = "--------.--------<--------^-------->";
+
+    private final TeammateCompass teammateCompass;
+    private final TeamsManager teamsManager;
+
+    public CompassBenchmark(TeammateCompass teammateCompass, TeamsManager teamsManager) {
+        this.teammateCompass = teammateCompass;
+        this.teamsManager = teamsManager;
+    }
+
+    /**
+     * This method renders the compass of the player with both renderers.
+     *
+     * @param player     The player whose compass is rendered.
+     * @param iterations The number of renders per renderer, at most MAX_ITERATIONS.
+     * @return Allocated bytes per render and nanoseconds per render, first for the baseline then for the current renderer.
+     */
+    public double[] run(Player player, int iterations) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        iterations = Math.min(Math.max(iterations, 1), MAX_ITERATIONS);
+        // warm up both renderers so the measured loops run compiled code
+        int sink = 0;
+        for (int i = 0; i < Math.min(iterations, 5_000); i++) {
+            sink += renderLegacy(player).length() + teammateCompass.renderCompass(player).length();
+        }
+
+        double[] result = new double[4];
+        long bytes = threadMXBean.getCurrentThreadAllocatedBytes();
+        long nanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += renderLegacy(player).length();
+        }
+        result[1] = (double) (System.nanoTime() - nanos) / iterations;
+        result[0] = (double) (threadMXBean.getCurrentThreadAllocatedBytes() - bytes) / iterations;
+
+        bytes = threadMXBean.getCurrentThreadAllocatedBytes();
+        nanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += teammateCompass.renderCompass(player).length();
+        }
+        result[3] = (double) (System.nanoTime() - nanos) / iterations;
+        result[2] = (double) (threadMXBean.getCurrentThreadAllocatedBytes() - bytes) / iterations;
+
+        // keeps the renders from being optimized away
+        if (sink == 42) {
+            result[0]++;
+        }
+        return result;
+    }
+
+    /**
+     * Condensed copy of the string building renderer, it makes the same allocations: a new string for every teammate
+     * marker, for the rotation and for the colors.
+     */
+    private String renderLegacy(Player player) {
+        String bar = compassBarString;
+        Team team = teamsManager.getTeam(player);
+        if (team != null) {
+            for (String teammate : team.getEntries()) {
+                Player teammatePlayer = Bukkit.getPlayerExact(teammate);
+                if (teammatePlayer != null && teammatePlayer != player) {
+                    Vector direction = teammatePlayer.getLocation().toVector().subtract(player.getLocation().toVector());
+                    int offset = Math.floorMod(getOffset(getAngle(direction)) - 1, bar.length());
+                    bar = bar.substring(0, offset) + teammate.charAt(0) + bar.substring(offset + 1);
+                }
+            }
+        }
+        double angle = getAngle(player.getLocation().getDirection()) + Math.PI;
+        int offset = getOffset(angle);
+        bar = (angle < Math.PI ? "" : "-") + bar.substring(offset) + bar.substring(0, offset) + (angle < Math.PI ? "-" : "");
+
+        StringBuilder coloredBar = new StringBuilder();
+        for (char c : bar.toCharArray()) {
+            coloredBar.append(c == '-' ? ChatColor.GRAY : ChatColor.WHITE).append(c);
+        }
+        return coloredBar.toString();
+    }
+
+    private static double getAngle(Vector direction) {
+        direction.setY(0);
+        direction.normalize();
+        return direction.angle(new Vector(1, 0, 0)) * direction.getZ() / Math.abs(direction.getZ());
+    }
+
+    private static int getOffset(double angle) {
+        return (int) (compassBarString.length() * angle / (2 * Math.PI));
+    }
+}
@@ -1,16 +1,19 @@
 package me.stahu.gsblockshuffle.gui;
 
+import me.stahu.gsblockshuffle.GSBlockShuffle;
 import me.stahu.gsblockshuffle.team.TeamsManager;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.boss.BarColor;
 import org.bukkit.boss.BarStyle;
 import org.bukkit.boss.BossBar;
 import org.bukkit.entity.Player;
 import org.bukkit.scoreboard.Team;
-import org.bukkit.util.Vector;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 public class TeammateCompass {
@@ -18,10 +21,48 @@ public class TeammateCompass {
     public Map<String, BossBar> compassBars = new HashMap<>();
 
     private static final String compassBarString = "--------.--------<--------^-------->";
+    private static final int compassLength = compassBarString.length();
+    private static final char teammateGlyph = '☻';
+    // every glyph of a strip is a color code followed by the character, teammate letters are also bold
+    private static final int glyphWidth = 3;
+    private static final int boldGlyphWidth = 5;
+    // colored strips for every heading offset, [0] for headings below PI and [1] for the rest,
+    // the strips have one glyph more than the compass for the dash that pads the missing half glyph
+    private static final char[][][] rotatedStrips = new char[2][compassLength][];
+    private static final String[][] rotatedStripStrings = new String[2][compassLength];
 
+    static {
+        for (int half = 0; half < 2; half++) {
+            for (int offset = 0; offset < compassLength; offset++) {
+                char[] strip = new char[(compassLength + 1) * glyphWidth];
+                for (int slot = 0; slot <= compassLength; slot++) {
+                    int position = getCompassPosition(half, offset, slot);
+                    writeGlyph(strip, slot * glyphWidth, position == -1 ? '-' : compassBarString.charAt(position));
+                }
+                rotatedStrips[half][offset] = strip;
+                rotatedStripStrings[half][offset] = new String(strip);
+            }
+        }
+    }
+
+    private final GSBlockShuffle plugin;
     private final TeamsManager teamsManager;
+    // players whose compass has to be recomputed on the next tick
+    private final HashSet<String> dirtyCompasses = new HashSet<>();
+    // what each compass currently shows: heading offset, half flag, then (offset, marker) pairs
+    private final Map<String, int[]> shownCompassStates = new HashMap<>();
+    private int refreshTask = -1;
+
+    // scratch space reused by every render, compasses are only rendered on the main thread
+    private final Location viewerLocation = new Location(null, 0, 0, 0);
+    private final Location teammateLocation = new Location(null, 0, 0, 0);
+    private final char[] markers = new char[compassLength];
+    private final char[] titleBuffer = new char[(compassLength + 1) * boldGlyphWidth];
+    private int[] compassState = new int[2];
+    private int compassStateLength;
 
-    public TeammateCompass(TeamsManager teamsManager) {
+    public TeammateCompass(GSBlockShuffle plugin, TeamsManager teamsManager) {
+        this.plugin = plugin;
         this.teamsManager = teamsManager;
     }
 
@@ -39,106 +80,207 @@ public class TeammateCompass {
             else {
                 compassBars.get(serverPlayer.getName()).addPlayer(serverPlayer);
             }
+            dirtyCompasses.add(serverPlayer.getName());
+        }
+        // compasses are refreshed at most once per player per tick, no matter how many moves marked them
+        if (refreshTask == -1) {
+            refreshTask = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, this::refreshDirtyCompasses, 1, 1);
         }
     }
 
     public void clearCompassBars() {
+        if (refreshTask != -1) {
+            Bukkit.getScheduler().cancelTask(refreshTask);
+            refreshTask = -1;
+        }
         for (BossBar compassBar : compassBars.values()) {
             compassBar.removeAll();
         }
         compassBars.clear();
+        dirtyCompasses.clear();
+        shownCompassStates.clear();
+    }
+
+    /**
+     * This method marks the compasses that can be affected by the player moving, the player's own compass and, if
+     * the player changed their position, the compasses of the player's teammates. They are recomputed on the next tick.
+     *
+     * @param player          The player that moved.
+     * @param positionChanged False if the player only turned their head, which only changes their own compass.
+     */
+    public void markMoved(Player player, boolean positionChanged) {
+        if (compassBars.isEmpty()) {
+            return;
+        }
+        dirtyCompasses.add(player.getName());
+        if (!positionChanged) {
+            return;
+        }
+        Team team = teamsManager.getTeam(player);
+        if (team != null) {
+            dirtyCompasses.addAll(team.getEntries());
+        }
     }
 
+    private void refreshDirtyCompasses() {
+        if (dirtyCompasses.isEmpty()) {
+            return;
+        }
+        for (String playerName : dirtyCompasses) {
+            Player player = Bukkit.getPlayerExact(playerName);
+            if (player != null) {
+                updateCompass(player);
+            }
+        }
+        dirtyCompasses.clear();
+    }
+
+    /**
+     * This method updates the compass of the player. The bossbar title is only rebuilt and sent when the heading or
+     * one of the teammate markers moved by at least one glyph.
+     *
+     * @param player The player whose compass is updated.
+     */
     public void updateCompass(Player player){
         BossBar compassBar = compassBars.get(player.getName());
         if (compassBar == null) {
             return;
         }
-        Vector direction = player.getLocation().getDirection();
-        //make the direction a vector in the xy plane
-        direction.setY(0);
-        direction.normalize();
-        //get the angle between the direction and the x-axis
-        double angle = direction.angle(new Vector(1, 0, 0)) * direction.getZ() / Math.abs(direction.getZ()) + Math.PI;
-        compassBar.setTitle(addColors(getCompassString(player, angle)));//+0.174532925
+        computeCompassState(player);
+
+        int[] shownState = shownCompassStates.get(player.getName());
+        if (shownState != null && Arrays.equals(compassState, 0, compassStateLength, shownState, 0, shownState.length)) {
+            return;
+        }
+        shownCompassStates.put(player.getName(), Arrays.copyOf(compassState, compassStateLength));
+        compassBar.setTitle(renderCompassState());
     }
 
-    private int getCompassOffset(double angle) {
-        return (int) ((compassBarString.length() * angle / (2 * Math.PI)));
+    /**
+     * This method renders the compass title of the player without sending it.
+     *
+     * @param player The player whose compass is rendered.
+     * @return The colored compass title.
+     */
+    public String renderCompass(Player player) {
+        computeCompassState(player);
+        return renderCompassState();
     }
 
-    private String getCompassString(Player player, double angle) {
-        int offset = getCompassOffset(angle);
-        String compassBarStringWithTeammates = placeTeammatesInCompass(player, compassBarString);
-        return (angle < Math.PI ? "" : "-") + compassBarStringWithTeammates.substring(offset, compassBarStringWithTeammates.length()) + compassBarStringWithTeammates.substring(0, offset)+ (angle < Math.PI ? "-" : "");
+    private static int getCompassOffset(double angle) {
+        return (int) ((compassLength * angle / (2 * Math.PI)));
     }
 
-    private String placeTeammatesInCompass(Player player, String compassBarString) {
-        boolean useFirstLetterOfTeammates = true;
-        for (Team team : teamsManager.teams) {
-            if (team.hasEntry(player.getName())) {
-                if (team.getEntries().size() == 1) {
-                    return compassBarString;
-                }else if (team.getEntries().size()==2){
-                    useFirstLetterOfTeammates = false;
-                }
-                for (String teammate : team.getEntries()) {
-                    if (!teammate.equals(player.getName())) {
-                        Player teammatePlayer = Bukkit.getPlayer(teammate);
-                        if (teammatePlayer != null) {
-                            Vector direction = teammatePlayer.getLocation().toVector().subtract(player.getLocation().toVector());
-                            direction.setY(0);
-                            direction.normalize();
-                            double angle = direction.angle(new Vector(1, 0, 0)) * direction.getZ() / Math.abs(direction.getZ());
-                            int offset = getCompassOffset(angle);
-                            offset = Math.floorMod((offset-1) ,compassBarString.length());
-                            if (offset < compassBarString.length()) {
-                                compassBarString = insertCaracterAtPosition(compassBarString, offset,useFirstLetterOfTeammates ? teammate.charAt(0) : '☻');
-                            }
-                        }
-                    }
-                }
-            }
+    /**
+     * This method returns the compass position shown in a slot of the rotated strip, -1 for the padding dash.
+     */
+    private static int getCompassPosition(int half, int offset, int slot) {
+        if (half == 1) {
+            return slot == 0 ? -1 : (offset + slot - 1) % compassLength;
         }
-        return compassBarString;
+        return slot == compassLength ? -1 : (offset + slot) % compassLength;
     }
 
-    private String insertCaracterAtPosition(String compassBarString, int position, char character) {
-//        //breadcast offset
-//        Bukkit.getOnlinePlayers().forEach(player -> player.sendMessage("offset: "+ position));
+    private void computeCompassState(Player player) {
+        player.getLocation(viewerLocation);
+        // the flattened look direction is (-sin(yaw), cos(yaw)), its angle from the x-axis shifted into [0, 2PI]
+        double yaw = Math.toRadians(viewerLocation.getYaw());
+        double angle = Math.atan2(Math.cos(yaw), -Math.sin(yaw)) + Math.PI;
 
-        StringBuilder newString = new StringBuilder();
-        for (int i = 0; i < compassBarString.length(); i++) {
-            if (i == position) {
-                newString.append(character);
+        Team team = teamsManager.getTeam(player);
+        int teammateCount = team == null ? 0 : Math.max(team.getEntries().size() - 1, 0);
+        compassStateLength = 2 + 2 * teammateCount;
+        if (compassState.length < compassStateLength) {
+            compassState = new int[compassStateLength];
+        }
+        compassState[0] = Math.floorMod(getCompassOffset(angle), compassLength);
+        compassState[1] = angle < Math.PI ? 0 : 1;
+        if (teammateCount > 0) {
+            placeTeammatesInCompass(player, team);
+        }
+    }
+
+    private void placeTeammatesInCompass(Player player, Team team) {
+        boolean useFirstLetterOfTeammates = team.getEntries().size() != 2;
+        int index = 2;
+        for (String teammate : team.getEntries()) {
+            if (teammate.equals(player.getName())) {
+                continue;
             }
-            else {
-                newString.append(compassBarString.charAt(i));
+            Player teammatePlayer = Bukkit.getPlayerExact(teammate);
+            if (teammatePlayer != null) {
+                teammatePlayer.getLocation(teammateLocation);
+                double angle = Math.atan2(teammateLocation.getZ() - viewerLocation.getZ(), teammateLocation.getX() - viewerLocation.getX());
+                compassState[index] = Math.floorMod(getCompassOffset(angle) - 1, compassLength);
+                compassState[index + 1] = useFirstLetterOfTeammates ? teammate.charAt(0) : teammateGlyph;
+            } else {
+                // offline teammates are not shown
+                compassState[index] = -1;
+                compassState[index + 1] = 0;
             }
+            index += 2;
         }
-        return newString.toString();
     }
 
-    private String addColors(String compassBarString) {
-        //add white before every letter and gray before every - if the letter is N add red color ☻ green
-        StringBuilder coloredCompassBar = new StringBuilder();
-        for (char c : compassBarString.toCharArray()) {
-            if (c == '>') {
-                coloredCompassBar.append(ChatColor.WHITE).append("E");
-            } else if (c == '.') {
-                coloredCompassBar.append(ChatColor.WHITE).append("S");
-            } else if (c == '<') {
-                coloredCompassBar.append(ChatColor.WHITE).append("W");
-            } else if (c == '^') {
-                coloredCompassBar.append(ChatColor.RED).append("N");
-            } else if (c == '-') {
-                coloredCompassBar.append(ChatColor.GRAY).append(c);
-            } else if (c == '☻') {
-                coloredCompassBar.append(ChatColor.GREEN).append(c);
+    private String renderCompassState() {
+        int half = compassState[1];
+        int offset = compassState[0];
+        if (compassStateLength == 2) {
+            return rotatedStripStrings[half][offset];
+        }
+
+        boolean hasMarkers = false;
+        for (int i = 2; i < compassStateLength; i += 2) {
+            if (compassState[i] >= 0) {
+                markers[compassState[i]] = (char) compassState[i + 1];
+                hasMarkers = true;
+            }
+        }
+        if (!hasMarkers) {
+            return rotatedStripStrings[half][offset];
+        }
+
+        char[] strip = rotatedStrips[half][offset];
+        int length = 0;
+        for (int slot = 0; slot <= compassLength; slot++) {
+            int position = getCompassPosition(half, offset, slot);
+            char marker = position == -1 ? 0 : markers[position];
+            if (marker == 0) {
+                System.arraycopy(strip, slot * glyphWidth, titleBuffer, length, glyphWidth);
+                length += glyphWidth;
             } else {
-                coloredCompassBar.append(ChatColor.GREEN).append(ChatColor.BOLD).append(c);
+                length = writeGlyph(titleBuffer, length, marker);
+            }
+        }
+        Arrays.fill(markers, (char) 0);
+        return new String(titleBuffer, 0, length);
+    }
+
+    /**
+     * This method writes the colored glyph for a compass character into the buffer.
+     *
+     * @return The index after the written glyph.
+     */
+    private static int writeGlyph(char[] buffer, int index, char c) {
+        //white letters for the directions, red N, gray dashes and green teammates
+        char color;
+        char shown = c;
+        switch (c) {
+            case '>' -> { color = ChatColor.WHITE.getChar(); shown = 'E'; }
+            case '.' -> { color = ChatColor.WHITE.getChar(); shown = 'S'; }
+            case '<' -> { color = ChatColor.WHITE.getChar(); shown = 'W'; }
+            case '^' -> { color = ChatColor.RED.getChar(); shown = 'N'; }
+            case '-' -> color = ChatColor.GRAY.getChar();
+            case teammateGlyph -> color = ChatColor.GREEN.getChar();
+            default -> {
+                buffer[index++] = ChatColor.COLOR_CHAR;
+                buffer[index++] = ChatColor.GREEN.getChar();
+                color = ChatColor.BOLD.getChar();
             }
         }
-        return coloredCompassBar.toString();
+        buffer[index++] = ChatColor.COLOR_CHAR;
+        buffer[index++] = color;
+        buffer[index++] = shown;
+        return index;
     }
 }
@@ -2,6 +2,7 @@ package me.stahu.gsblockshuffle.gui.item;
 
 import me.stahu.gsblockshuffle.gui.GuiUtils;
 import me.stahu.gsblockshuffle.settings.Category;
+import me.stahu.gsblockshuffle.settings.CategoryTree;
 import org.bukkit.Material;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.inventory.ItemStack;
@@ -11,6 +12,7 @@ import org.bukkit.inventory.ItemStack;
  */
 public class CategoryInclusionSwitch extends GuiItemSlot {
     private final Category category;
+    private final CategoryTree categoryTree;
     ItemStack[] switchArray;
     int switchIndex;
 
@@ -25,18 +27,21 @@ public class CategoryInclusionSwitch extends GuiItemSlot {
         switchIndex = (switchIndex + 1) % switchArray.length;
         itemStack = switchArray[switchIndex];
         this.category.setIncluded(switchIndex == 1);
+        this.categoryTree.invalidateBlockPools();
     }
 
     /**
      * The constructor for the CategoryInclusionSwitch class.
      * It initializes the category, switchArray, switchIndex, and itemStack.
      *
-     * @param category    The category to be included or excluded.
-     * @param switchIndex The initial index of the switch state.
+     * @param category     The category to be included or excluded.
+     * @param categoryTree The tree the category belongs to, its cached block pools are dropped on every switch.
+     * @param switchIndex  The initial index of the switch state.
      */
-    public CategoryInclusionSwitch(Category category, int switchIndex) {
+    public CategoryInclusionSwitch(Category category, CategoryTree categoryTree, int switchIndex) {
         super();
         this.category = category;
+        this.categoryTree = categoryTree;
         this.switchArray = new ItemStack[]{GuiUtils.createGuiItem(Material.RED_STAINED_GLASS_PANE, "Include", "Include this category in the shuffle"),
                 GuiUtils.createGuiItem(Material.GREEN_STAINED_GLASS_PANE, "Exclude", "Exclude this category from the shuffle")};
         this.switchIndex = switchIndex;
@@ -4,6 +4,7 @@ import me.stahu.gsblockshuffle.GSBlockShuffle;
 import me.stahu.gsblockshuffle.gui.GuiUtils;
 import me.stahu.gsblockshuffle.gui.item.*;
 import me.stahu.gsblockshuffle.settings.Category;
+import me.stahu.gsblockshuffle.settings.CompiledCategoryTree;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
@@ -14,8 +15,6 @@ import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.ArrayList;
-
 /**
  * Class that represents a page in the GUI that displays categories and subcategories
  */
@@ -68,31 +67,29 @@ public class SubcategoryGui extends GuiPage implements Listener {
      */
     private void placeCategoryHeader(int index, int offset, Category[] subcategories) {
 
-        //find the first item in the subcategory
-        Category tempCategory = subcategories[index];
-        while (tempCategory.subCategories != null) {
-            tempCategory = tempCategory.subCategories.get(0);
-        }
+        CompiledCategoryTree compiledTree = plugin.categoryTree.getCompiledTree();
 
-        //check if the first item is an optainable item if not use FILLED_MAP
-        Material categoryMaterial = Material.getMaterial(tempCategory.elements.get(0).get(0));
-        if ((categoryMaterial.isItem() == false) || categoryMaterial.isAir()) {
-            categoryMaterial = Material.getMaterial("FILLED_MAP");
+        //use the first optainable item in the subcategory, FILLED_MAP if there is none
+        Material categoryMaterial = compiledTree.getIconMaterial(subcategories[index]);
+        if (categoryMaterial == null) {
+            categoryMaterial = Material.FILLED_MAP;
         }
 
         //create the category header item
         String firstLoreLine = ChatColor.AQUA + (subcategories[index].subCategories == null ? "There are no subcategories" : "Click to see " + subcategories[index].subCategories.size() + " more subcategor" + (subcategories[index].subCategories.size() == 1 ? "y" : "ies"));
-        ArrayList<ArrayList<String>> allBlocks = subcategories[index].getBlocks();
+        int blockCount = compiledTree.getElementCount(subcategories[index]);
+        String blockCountLine = ChatColor.GRAY + "Contains " + blockCount + " block" + (blockCount == 1 ? "" : "s");
         String[] lore;
         if (subcategories[index].elements != null) {
-            lore = new String[allBlocks.size() + 1];
+            String[] blockNames = compiledTree.getElementNames(subcategories[index]);
+            lore = new String[blockNames.length + 2];
             lore[0] = firstLoreLine;
-            for (int i = 0; i < allBlocks.size(); i++) {
-                lore[i + 1] = allBlocks.get(i).get(0);
-            }
+            lore[1] = blockCountLine;
+            System.arraycopy(blockNames, 0, lore, 2, blockNames.length);
         }else {
-            lore = new String[1];
+            lore = new String[2];
             lore[0] = firstLoreLine;
+            lore[1] = blockCountLine;
         }
 
         ItemStack categoryItem = GuiUtils.createGuiItem(
@@ -116,7 +113,7 @@ public class SubcategoryGui extends GuiPage implements Listener {
                     ));
 
         // add the inclusion switch below the category header
-        slotArray[index + offset + 9] = new CategoryInclusionSwitch(subcategories[index], subcategories[index].isIncluded ? 1 : 0);
+        slotArray[index + offset + 9] = new CategoryInclusionSwitch(subcategories[index], plugin.categoryTree, subcategories[index].isIncluded ? 1 : 0);
     }
 
     /**
@@ -158,8 +155,8 @@ public class SubcategoryGui extends GuiPage implements Listener {
 
         slotArray[e.getRawSlot()].slotAction(e.getWhoClicked());
 
-        //save the changes to the config
-        plugin.saveConfiguration();
+        //save the changes to the categories
+        plugin.saveCategoryOverrides();
 
         updateItems();
     }
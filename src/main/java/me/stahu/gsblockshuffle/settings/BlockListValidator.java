@@ -0,0 +1,120 @@
+package me.stahu.gsblockshuffle.settings;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BlockListValidator class resolves the block names of a parsed category tree against the materials of the
+ * running server. Names from other Minecraft versions are replaced by their current name, names that can't be
+ * resolved are removed, so every name left in the tree is the name of a material.
+ */
+public final class BlockListValidator {
+    /**
+     * Version of the validation rules, must be increased whenever they change so cached snapshots are validated again.
+     */
+    public static final int RULES_VERSION = 1;
+    private static final String LEGACY_PREFIX = "LEGACY_";
+    // blocks renamed between Minecraft versions, both directions so a list from a newer version also loads
+    private static final Map<String, String> RENAMED_BLOCKS = Map.of(
+            "GRASS", "SHORT_GRASS",
+            "SHORT_GRASS", "GRASS",
+            "GRASS_PATH", "DIRT_PATH",
+            "DIRT_PATH", "GRASS_PATH",
+            "SCUTE", "TURTLE_SCUTE",
+            "TURTLE_SCUTE", "SCUTE");
+
+    private BlockListValidator() {
+    }
+
+    /**
+     * This method resolves every block name of the categories in place. Every remapped or removed name is recorded in
+     * problems together with its YAML path. Elements left without a name are removed.
+     *
+     * @param categories The top level categories of the tree.
+     * @param problems   The list the problems are added to.
+     */
+    public static void validate(List<Category> categories, List<String> problems) {
+        for (Category category : categories) {
+            validate(category, category.name, problems);
+        }
+    }
+
+    private static void validate(Category category, String path, List<String> problems) {
+        if (category.subCategories != null) {
+            for (Category subcategory : category.subCategories) {
+                validate(subcategory, path + "." + subcategory.name, problems);
+            }
+            return;
+        }
+        if (category.elements == null) {
+            return;
+        }
+        int i = 0;
+        for (Iterator<ArrayList<String>> elements = category.elements.iterator(); elements.hasNext(); i++) {
+            ArrayList<String> element = elements.next();
+            String elementPath = path + ".elements[" + i + "]";
+            String firstName = element.isEmpty() ? null : element.get(0);
+            for (int j = element.size() - 1; j >= 0; j--) {
+                String blockName = element.get(j);
+                Material material = getMaterial(blockName);
+                if (material == null) {
+                    problems.add(elementPath + ": unknown block " + blockName + ", removed");
+                    element.remove(j);
+                } else if (!material.name().equals(blockName)) {
+                    problems.add(elementPath + ": " + blockName + " is now called " + material.name() + ", remapped");
+                    element.set(j, material.name());
+                }
+            }
+            if (element.isEmpty()) {
+                elements.remove();
+            } else if (category.blockWeights != null && !element.get(0).equals(firstName)) {
+                // the weights are keyed by the first name of the block
+                renameWeight(category.blockWeights, firstName, element.get(0));
+            }
+        }
+    }
+
+    private static void renameWeight(LinkedHashMap<String, Double> blockWeights, String oldName, String newName) {
+        Double weight = blockWeights.remove(oldName);
+        if (weight != null) {
+            blockWeights.put(newName, weight);
+        }
+    }
+
+    /**
+     * This method looks up the material of a block name. Besides the exact name it accepts lower case and namespaced
+     * names, blocks that were renamed and names of the pre 1.13 material list.
+     *
+     * @param blockName The name of the block.
+     * @return The material, null if the name doesn't match a material of this server.
+     */
+    public static Material getMaterial(String blockName) {
+        Material material = Material.getMaterial(blockName);
+        if (material != null && !material.isLegacy()) {
+            return material;
+        }
+        String renamed = RENAMED_BLOCKS.get(blockName);
+        if (renamed != null && (material = Material.getMaterial(renamed)) != null) {
+            return material;
+        }
+        material = Material.matchMaterial(blockName);
+        if (material != null && !material.isLegacy()) {
+            return material;
+        }
+        String legacyName = blockName.toUpperCase();
+        if (legacyName.startsWith(LEGACY_PREFIX)) {
+            legacyName = legacyName.substring(LEGACY_PREFIX.length());
+        }
+        // converts the legacy material to the current one
+        material = Material.getMaterial(legacyName, true);
+        if (material == null || material.isLegacy() || (material.isAir() && !legacyName.equals("AIR"))) {
+            return null;
+        }
+        return material;
+    }
+}
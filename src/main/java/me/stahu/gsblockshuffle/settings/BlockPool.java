@@ -0,0 +1,281 @@
+package me.stahu.gsblockshuffle.settings;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.SplittableRandom;
+
+/**
+ * The BlockPool class is an immutable snapshot of the blocks that can be drawn for one combination of settings.
+ * A pool consists of packs and a pack of elements of a CompiledCategoryTree, pack i spans
+ * [packOffsets[i], packOffsets[i + 1]) of packElements.
+ * Draws pick a pack by its weight and an element of the pack by the element's weight in a single step, using an alias
+ * table over all pack elements.
+ */
+public class BlockPool {
+    private final CompiledCategoryTree compiledTree;
+    private final int[] packOffsets;
+    private final int[] packElements;
+    private final int[] packIds;
+    // pack weights in fixed point units and a Fenwick tree over them, used to draw distinct packs by weight
+    private final long[] packWeightUnits;
+    private final long[] packWeightTree;
+    private final long totalPackWeightUnits;
+    private final boolean uniformPackWeights;
+    // running total of the element weights inside each pack, used to draw an element of a given pack
+    private final double[] packElementCumulativeWeights;
+    // alias table: entry i is drawn with aliasProbabilities[i], otherwise aliases[i] is drawn
+    private final double[] aliasProbabilities;
+    private final int[] aliases;
+
+    /**
+     * The constructor for the BlockPool class.
+     *
+     * @param compiledTree       The tree the elements belong to.
+     * @param packOffsets        The start of every pack in packElements followed by the number of elements.
+     * @param packElements       The elements of all packs.
+     * @param packIds            The id of every pack, the same pack has the same id in the pools of all difficulties.
+     * @param packWeights        The weight of every pack, only the first (packOffsets.length - 1) are used.
+     * @param packElementWeights The weight of every element relative to the other elements of its pack.
+     */
+    BlockPool(CompiledCategoryTree compiledTree, int[] packOffsets, int[] packElements, int[] packIds,
+              double[] packWeights, double[] packElementWeights) {
+        this.compiledTree = compiledTree;
+        this.packOffsets = packOffsets;
+        this.packElements = packElements;
+        this.packIds = packIds;
+
+        int entryCount = packElements.length;
+        this.packElementCumulativeWeights = new double[entryCount];
+        double[] probabilities = new double[entryCount];
+        double totalPackWeight = 0;
+        for (int pack = 0; pack < size(); pack++) {
+            totalPackWeight += packWeights[pack];
+        }
+        for (int pack = 0; pack < size(); pack++) {
+            double packElementWeight = 0;
+            for (int i = packOffsets[pack]; i < packOffsets[pack + 1]; i++) {
+                packElementWeight += packElementWeights[i];
+                packElementCumulativeWeights[i] = packElementWeight;
+            }
+            for (int i = packOffsets[pack]; i < packOffsets[pack + 1]; i++) {
+                probabilities[i] = packWeights[pack] / totalPackWeight * packElementWeights[i] / packElementWeight;
+            }
+        }
+        this.aliasProbabilities = new double[entryCount];
+        this.aliases = new int[entryCount];
+        buildAliasTable(probabilities);
+
+        this.packWeightUnits = toWeightUnits(packWeights, size());
+        this.packWeightTree = new long[size() + 1];
+        long total = 0;
+        boolean uniform = true;
+        for (int pack = 0; pack < size(); pack++) {
+            total += packWeightUnits[pack];
+            uniform &= packWeightUnits[pack] == packWeightUnits[0];
+            packWeightTree[pack + 1] += packWeightUnits[pack];
+            int parent = pack + 1 + ((pack + 1) & -(pack + 1));
+            if (parent <= size()) {
+                packWeightTree[parent] += packWeightTree[pack + 1];
+            }
+        }
+        this.totalPackWeightUnits = total;
+        this.uniformPackWeights = uniform;
+    }
+
+    /**
+     * Converts the pack weights to whole units, so drawn packs can be taken out of the Fenwick tree without rounding
+     * errors. The highest weight is 2^40 units, which leaves room for a million packs in a long. Every pack with a
+     * positive weight gets at least one unit, if no pack has a positive weight all of them get one.
+     */
+    private static long[] toWeightUnits(double[] packWeights, int packCount) {
+        double maxWeight = 0;
+        for (int pack = 0; pack < packCount; pack++) {
+            maxWeight = Math.max(maxWeight, packWeights[pack]);
+        }
+        long[] units = new long[packCount];
+        for (int pack = 0; pack < packCount; pack++) {
+            if (maxWeight <= 0) {
+                units[pack] = 1;
+            } else if (packWeights[pack] > 0) {
+                units[pack] = Math.max(1, Math.round(packWeights[pack] / maxWeight * (1L << 40)));
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Builds the alias table with Vose's method.
+     *
+     * @param probabilities The probability of every entry, they must sum up to 1.
+     */
+    private void buildAliasTable(double[] probabilities) {
+        int entryCount = probabilities.length;
+        int[] small = new int[entryCount];
+        int[] large = new int[entryCount];
+        int smallCount = 0;
+        int largeCount = 0;
+        double[] scaled = new double[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            scaled[i] = probabilities[i] * entryCount;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            aliasProbabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is 1 up to rounding errors
+        while (largeCount > 0) {
+            aliasProbabilities[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            aliasProbabilities[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * @return The number of packs in the pool.
+     */
+    public int size() {
+        return packOffsets.length - 1;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The number of elements in all packs of the pool.
+     */
+    public int getElementCount() {
+        return packElements.length;
+    }
+
+    /**
+     * This method draws a random element, a pack is drawn by its weight and an element of it by the element's weight.
+     *
+     * @param random The random number generator to draw with.
+     * @return The index of the element in the compiled tree.
+     */
+    public int drawElement(SplittableRandom random) {
+        if (isEmpty()) {
+            throw new IllegalArgumentException("Block list is empty");
+        }
+
+        int entry = random.nextInt(packElements.length);
+        if (random.nextDouble() >= aliasProbabilities[entry]) {
+            entry = aliases[entry];
+        }
+        return packElements[entry];
+    }
+
+    /**
+     * This method draws a random element of the pack by the weights of its elements.
+     *
+     * @param pack   The index of the pack.
+     * @param random The random number generator to draw with.
+     * @return The index of the element in the compiled tree.
+     */
+    public int drawElement(int pack, SplittableRandom random) {
+        int start = packOffsets[pack];
+        int end = packOffsets[pack + 1];
+        double value = random.nextDouble() * packElementCumulativeWeights[end - 1];
+        for (int i = start; i < end - 1; i++) {
+            if (value < packElementCumulativeWeights[i]) {
+                return packElements[i];
+            }
+        }
+        return packElements[end - 1];
+    }
+
+    /**
+     * @param pack The index of the pack.
+     * @return The id of the pack, the same in the pools of all difficulties.
+     */
+    public int getPackId(int pack) {
+        return packIds[pack];
+    }
+
+    /**
+     * @return True if every pack is drawn with the same weight.
+     */
+    boolean hasUniformPackWeights() {
+        return uniformPackWeights;
+    }
+
+    /**
+     * @param pack The index of the pack.
+     * @return The weight of the pack in the units of the Fenwick tree.
+     */
+    long getPackWeightUnits(int pack) {
+        return packWeightUnits[pack];
+    }
+
+    /**
+     * @param node The 1-based node of the Fenwick tree.
+     * @return The total weight units of the packs the node covers.
+     */
+    long getPackWeightNode(int node) {
+        return packWeightTree[node];
+    }
+
+    long getTotalPackWeightUnits() {
+        return totalPackWeightUnits;
+    }
+
+    /**
+     * @param element The index of the element in the compiled tree.
+     * @return A new list with the block names of the element.
+     */
+    public ArrayList<String> getBlockNames(int element) {
+        return compiledTree.getBlockNames(element);
+    }
+
+    /**
+     * @param element The index of the element in the compiled tree.
+     * @return EnumSet of the materials that count as finding the element.
+     */
+    public EnumSet<Material> getTargets(int element) {
+        return compiledTree.getTargets(element);
+    }
+
+    /**
+     * Estimates the heap used by the pool, not counting the compiled tree it refers to.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateHeapBytes() {
+        return HeapEstimate.intArray(packOffsets.length) + HeapEstimate.intArray(packElements.length)
+                + HeapEstimate.intArray(packIds.length) + HeapEstimate.longArray(packWeightUnits.length)
+                + HeapEstimate.longArray(packWeightTree.length)
+                + HeapEstimate.doubleArray(packElementCumulativeWeights.length)
+                + HeapEstimate.doubleArray(aliasProbabilities.length) + HeapEstimate.intArray(aliases.length);
+    }
+
+    /**
+     * Estimates the heap the same pool used as nested lists: a list of packs, every pack a list of element lists
+     * shared with the categories.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateListHeapBytes() {
+        long bytes = HeapEstimate.arrayList(size());
+        for (int pack = 0; pack < size(); pack++) {
+            bytes += HeapEstimate.arrayList(packOffsets[pack + 1] - packOffsets[pack]);
+        }
+        return bytes;
+    }
+}
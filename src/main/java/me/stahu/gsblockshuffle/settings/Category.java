@@ -1,16 +1,24 @@
 package me.stahu.gsblockshuffle.settings;
 
-import org.bukkit.configuration.file.YamlConfiguration;
-
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Category {
     public String name;
     public boolean isIncluded;
     public int difficulty;
+    /**
+     * Relative chance of drawing from this category compared to its siblings, 1 if not set.
+     */
+    public double weight = 1;
+    /**
+     * Relative chance of each block of a leaf category, keyed by the first name of the block. Blocks without an entry
+     * have a weight of 1.
+     */
+    public LinkedHashMap<String, Double> blockWeights;
     public ArrayList<Category> subCategories;
     public ArrayList<ArrayList<String>> elements;
 
@@ -25,63 +33,16 @@ public class Category {
         fromMap(map, name);
     }
 
-    // TODO refine code
-    public ArrayList<ArrayList<ArrayList<String>>> getBlockSet(YamlConfiguration settings) {
-        ArrayList<ArrayList<ArrayList<String>>> blocks = new ArrayList<>();
-        boolean includeLowerDifficulties = settings.getBoolean("includeLowerDifficulties");
-        boolean treatAllAsIndividualBlocks = settings.getBoolean("treatAllAsIndividualBlocks");
-
-        if (!isIncluded || !checkDifficulty(settings, true)) {
-            return null;
-        }
-
-        if (treatAllAsIndividualBlocks) {
-            if (elements != null) {
-                for (ArrayList<String> element : elements) {
-                    ArrayList<ArrayList<String>> block = new ArrayList<>();
-                    block.add(element);
-                    blocks.add(block);
-                }
-            } else {
-                for (Category subcategory : subCategories) {
-                    ArrayList<ArrayList<ArrayList<String>>> blockSet = subcategory.getBlockSet(settings);
-                    if (blockSet != null) {
-                        blocks.addAll(blockSet);
-                    }
-                }
-            }
-            return blocks;
-        }
-        // Group blocks into packs like variants of wool, conrete, etc.
-        // Handle variants
-        if (subCategories != null) {
-            // This pack is used to group all "base" and "variant" subcategories to a group that will be treated as a single block
-            ArrayList<ArrayList<String>> pack = new ArrayList<>();
-            for (Category subcategory : subCategories) {
-                // Only add "base" and "variant" subcategories + check difficulty and isIncluded
-                if ((subcategory.name.equals("base") || subcategory.name.equals("variant")) && subcategory.isIncluded
-                        && subcategory.checkDifficulty(settings, includeLowerDifficulties)) {
-                    pack.addAll(subcategory.elements);
-                } else {
-                    ArrayList<ArrayList<ArrayList<String>>> blockSet = subcategory.getBlockSet(settings);
-                    if (blockSet != null) {
-                        blocks.addAll(blockSet);
-                    }
-                    if (subcategory.elements != null && subcategory.isIncluded
-                            && subcategory.checkDifficulty(settings, includeLowerDifficulties)) {
-                        for (ArrayList<String> element : subcategory.elements) {
-                            ArrayList<ArrayList<String>> wrap = new ArrayList<>();
-                            wrap.add(element);
-                            blocks.add(wrap);
-                        }
-                    }
-                }
-            }
-            if (!pack.isEmpty()) {
-                blocks.add(pack);
-            }
-        }
-        return blocks;
+    /**
+     * This constructor reads a category from its YAML map and records every value of the wrong type in problems.
+     *
+     * @param map      The map of the category.
+     * @param name     The name of the category.
+     * @param path     The YAML path of the category, used in the problems.
+     * @param problems The list the problems are added to.
+     */
+    public Category(Map<?, ?> map, String name, String path, List<String> problems) {
+        fromMap(map, name, path, problems);
     }
 
     /**
@@ -107,6 +68,12 @@ public class Category {
         LinkedHashMap<String, Object> map = new LinkedHashMap<>();
         map.put("isIncluded", isIncluded);
         map.put("difficulty", difficulty);
+        if (weight != 1) {
+            map.put("weight", weight);
+        }
+        if (blockWeights != null) {
+            map.put("weights", blockWeights);
+        }
         if (subCategories != null) {
             for (Category subcategory : subCategories) {
                 map.put(subcategory.name, subcategory.toMap());
@@ -117,56 +84,113 @@ public class Category {
         return map;
     }
 
-    // TODO safe cast
     public void fromMap(Map<String, Object> map, String name) {
+        fromMap(map, name, name, new ArrayList<>());
+    }
+
+    /**
+     * This method reads the category from its YAML map. Values of the wrong type are replaced by their defaults and
+     * entries that are neither a block nor a list of blocks are left out, each of them is recorded in problems.
+     *
+     * @param map      The map of the category, the keys of the category's own settings are removed from it.
+     * @param name     The name of the category.
+     * @param path     The YAML path of the category, used in the problems.
+     * @param problems The list the problems are added to.
+     */
+    public void fromMap(Map<?, ?> map, String name, String path, List<String> problems) {
         this.name = name;
-        this.isIncluded = map.get("isIncluded") != null && (boolean) map.get("isIncluded");
-        this.difficulty = map.get("difficulty") != null ? (int) map.get("difficulty") : 0;
-        map.remove("isIncluded");
-        map.remove("difficulty");
+        Object isIncluded = map.remove("isIncluded");
+        if (isIncluded instanceof Boolean) {
+            this.isIncluded = (Boolean) isIncluded;
+        } else if (isIncluded != null) {
+            problems.add(path + ".isIncluded: expected true or false but found " + isIncluded + ", using false");
+        }
+        Object difficulty = map.remove("difficulty");
+        if (difficulty instanceof Number) {
+            this.difficulty = ((Number) difficulty).intValue();
+        } else if (difficulty != null) {
+            problems.add(path + ".difficulty: expected a number but found " + difficulty + ", using 0");
+        }
+        Object weight = map.remove("weight");
+        if (weight instanceof Number) {
+            this.weight = ((Number) weight).doubleValue();
+        } else if (weight != null) {
+            problems.add(path + ".weight: expected a number but found " + weight + ", using 1");
+        }
+        Object weights = map.remove("weights");
+        if (weights instanceof Map<?, ?> weightMap) {
+            this.blockWeights = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : weightMap.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    this.blockWeights.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).doubleValue());
+                } else {
+                    problems.add(path + ".weights." + entry.getKey() + ": expected a number but found " + entry.getValue() + ", ignored");
+                }
+            }
+        } else if (weights != null) {
+            problems.add(path + ".weights: expected a map of block weights, ignored");
+        }
         if (map.containsKey("elements")) {
-//            this.elements = (ArrayList<ArrayList<String>>) map.get("elements");
-            this.elements = castElements((ArrayList<Object>) map.get("elements"));
+            Object elements = map.get("elements");
+            if (elements instanceof List<?> elementList) {
+                this.elements = castElements(elementList, path + ".elements", problems);
+            } else {
+                problems.add(path + ".elements: expected a list of blocks, using an empty list");
+                this.elements = new ArrayList<>();
+            }
         } else {
             this.subCategories = new ArrayList<>();
-            for (Map.Entry<String, Object> entry : map.entrySet()) {
-                Category subcategory = new Category((LinkedHashMap<String, Object>) entry.getValue(), entry.getKey());
-                this.subCategories.add(subcategory);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String subcategoryName = String.valueOf(entry.getKey());
+                String subcategoryPath = path + "." + subcategoryName;
+                if (entry.getValue() instanceof Map<?, ?> subcategoryMap) {
+                    this.subCategories.add(new Category(subcategoryMap, subcategoryName, subcategoryPath, problems));
+                } else {
+                    problems.add(subcategoryPath + ": expected a category but found " + entry.getValue() + ", skipped");
+                }
             }
         }
     }
 
-    // TODO raise error if neither String or ArrayList
-    private ArrayList<ArrayList<String>> castElements(ArrayList<Object> elements) {
+    private ArrayList<ArrayList<String>> castElements(List<?> elements, String path, List<String> problems) {
         ArrayList<ArrayList<String>> castedElements = new ArrayList<>();
         //check if element is string or list
-        for (Object o : elements) {
+        for (int i = 0; i < elements.size(); i++) {
+            Object o = elements.get(i);
             if (o instanceof String) {
                 ArrayList<String> element = new ArrayList<>();
                 element.add((String) o);
                 castedElements.add(element);
+            } else if (o instanceof List<?> names) {
+                ArrayList<String> element = new ArrayList<>();
+                for (Object blockName : names) {
+                    if (blockName instanceof String) {
+                        element.add((String) blockName);
+                    } else {
+                        problems.add(path + "[" + i + "]: expected a block name but found " + blockName + ", skipped");
+                    }
+                }
+                castedElements.add(element);
             } else {
-                castedElements.add((ArrayList<String>) o);
+                problems.add(path + "[" + i + "]: expected a block or a list of blocks but found " + o + ", skipped");
             }
         }
         return castedElements;
     }
 
-    public void setIncluded(boolean included) {
-        this.isIncluded = included;
-    }
-
-    private boolean checkDifficulty(YamlConfiguration settings, boolean includeLowerDifficulties) {
-        int gameDifficulty = settings.getInt("difficulty");
-
-        if (gameDifficulty == -1) {
-            return true;
+    /**
+     * @param element A block of this category.
+     * @return The weight of the block, 1 if it has none.
+     */
+    public double getBlockWeight(ArrayList<String> element) {
+        if (blockWeights == null || element.isEmpty()) {
+            return 1;
         }
+        return blockWeights.getOrDefault(element.get(0), 1.0);
+    }
 
-        if (includeLowerDifficulties) {
-            return this.difficulty <= gameDifficulty;
-        }
-        return this.difficulty == gameDifficulty;
+    public void setIncluded(boolean included) {
+        this.isIncluded = included;
     }
 
     public Collection<String> getAllBlocks() {
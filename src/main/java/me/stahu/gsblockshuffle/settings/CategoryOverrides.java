@@ -0,0 +1,173 @@
+package me.stahu.gsblockshuffle.settings;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The CategoryOverrides class holds the changes made to the categories of the block list, so the block list itself
+ * never has to be rewritten.
+ * The overrides are keyed by the path of the category (i.e. "wool.variant") and only hold the values that differ from
+ * the block list: isIncluded, difficulty, weight and weights.
+ */
+public class CategoryOverrides {
+    // the values of every category as they are in the block list, keyed by path
+    private final HashMap<String, LinkedHashMap<String, Object>> baseline = new HashMap<>();
+    private final LinkedHashMap<String, Category> categoriesByPath = new LinkedHashMap<>();
+    // overrides of categories that aren't in the block list, written back unchanged
+    private final LinkedHashMap<String, Object> unknownOverrides = new LinkedHashMap<>();
+
+    /**
+     * The constructor for the CategoryOverrides class.
+     * It records the values of the categories as the baseline the overrides are compared against.
+     *
+     * @param categories The top level categories of the block list, before any override is applied.
+     */
+    public CategoryOverrides(List<Category> categories) {
+        for (Category category : categories) {
+            index(category, category.name);
+        }
+    }
+
+    private void index(Category category, String path) {
+        categoriesByPath.put(path, category);
+        baseline.put(path, getValues(category));
+        if (category.subCategories != null) {
+            for (Category subcategory : category.subCategories) {
+                index(subcategory, path + "." + subcategory.name);
+            }
+        }
+    }
+
+    private static LinkedHashMap<String, Object> getValues(Category category) {
+        LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+        values.put("isIncluded", category.isIncluded);
+        values.put("difficulty", category.difficulty);
+        values.put("weight", category.weight);
+        values.put("weights", category.blockWeights == null ? null : new LinkedHashMap<>(category.blockWeights));
+        return values;
+    }
+
+    /**
+     * This method reads the overrides file and applies it to the categories. A missing file means no overrides.
+     * Values of the wrong type and paths of unknown categories are recorded in problems.
+     *
+     * @param file     The overrides file.
+     * @param problems The list the problems are added to.
+     * @throws IOException If the file exists but can't be read.
+     */
+    public void load(File file, List<String> problems) throws IOException {
+        unknownOverrides.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        Object root;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            root = new Yaml().load(inputStream);
+        }
+        if (!(root instanceof Map<?, ?> map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String path = String.valueOf(entry.getKey());
+            Category category = categoriesByPath.get(path);
+            if (category == null) {
+                problems.add(path + ": unknown category, ignored");
+                unknownOverrides.put(path, entry.getValue());
+            } else if (entry.getValue() instanceof Map<?, ?> values) {
+                apply(category, values, path, problems);
+            } else {
+                problems.add(path + ": expected a map of category settings, ignored");
+            }
+        }
+    }
+
+    private static void apply(Category category, Map<?, ?> values, String path, List<String> problems) {
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            switch (key) {
+                case "isIncluded" -> {
+                    if (value instanceof Boolean) {
+                        category.isIncluded = (Boolean) value;
+                    } else {
+                        problems.add(path + ".isIncluded: expected true or false but found " + value + ", ignored");
+                    }
+                }
+                case "difficulty" -> {
+                    if (value instanceof Number) {
+                        category.difficulty = ((Number) value).intValue();
+                    } else {
+                        problems.add(path + ".difficulty: expected a number but found " + value + ", ignored");
+                    }
+                }
+                case "weight" -> {
+                    if (value instanceof Number) {
+                        category.weight = ((Number) value).doubleValue();
+                    } else {
+                        problems.add(path + ".weight: expected a number but found " + value + ", ignored");
+                    }
+                }
+                case "weights" -> {
+                    if (value == null) {
+                        category.blockWeights = null;
+                    } else if (value instanceof Map<?, ?> weightMap) {
+                        category.blockWeights = new LinkedHashMap<>();
+                        for (Map.Entry<?, ?> weight : weightMap.entrySet()) {
+                            if (weight.getValue() instanceof Number) {
+                                category.blockWeights.put(String.valueOf(weight.getKey()), ((Number) weight.getValue()).doubleValue());
+                            } else {
+                                problems.add(path + ".weights." + weight.getKey() + ": expected a number but found " + weight.getValue() + ", ignored");
+                            }
+                        }
+                    } else {
+                        problems.add(path + ".weights: expected a map of block weights, ignored");
+                    }
+                }
+                default -> problems.add(path + "." + key + ": unknown setting, ignored");
+            }
+        }
+    }
+
+    /**
+     * This method collects the values of every category that differ from the block list.
+     *
+     * @return LinkedHashMap of category paths to their changed values.
+     */
+    public LinkedHashMap<String, Object> toMap() {
+        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Category> entry : categoriesByPath.entrySet()) {
+            LinkedHashMap<String, Object> baselineValues = baseline.get(entry.getKey());
+            LinkedHashMap<String, Object> changedValues = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> value : getValues(entry.getValue()).entrySet()) {
+                if (!Objects.equals(value.getValue(), baselineValues.get(value.getKey()))) {
+                    changedValues.put(value.getKey(), value.getValue());
+                }
+            }
+            if (!changedValues.isEmpty()) {
+                map.put(entry.getKey(), changedValues);
+            }
+        }
+        map.putAll(unknownOverrides);
+        return map;
+    }
+
+    /**
+     * @return The overrides as the content of the overrides file.
+     */
+    public String saveToString() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        LinkedHashMap<String, Object> map = toMap();
+        return map.isEmpty() ? "" : new Yaml(options).dump(map);
+    }
+}
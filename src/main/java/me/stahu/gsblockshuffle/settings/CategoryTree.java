@@ -1,14 +1,20 @@
 package me.stahu.gsblockshuffle.settings;
 
+import me.stahu.gsblockshuffle.GSBlockShuffle;
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * The CategoryTree class represents a tree of categories.
@@ -16,82 +22,198 @@ import java.util.LinkedHashMap;
  */
 public class CategoryTree {
     public ArrayList<Category> categories;
+    private CompiledCategoryTree compiledTree;
+    // pools compiled for the settings they were requested with, see getBlockPool
+    private final HashMap<BlockPoolKey, BlockPool> blockPools = new HashMap<>();
+    private int inclusionVersion;
+    private List<String> loadProblems = new ArrayList<>();
+    private boolean loadedFromSnapshot;
+    private CategoryOverrides overrides;
+    private List<String> overrideProblems = new ArrayList<>();
+    private long loadNanos;
+    // indexed by (includeLowerDifficulties ? 2 : 0) + (treatAllAsIndividualBlocks ? 1 : 0), built on first use
+    private final DifficultyIndex[] difficultyIndices = new DifficultyIndex[4];
 
     /**
-     * The constructor for the CategoryTree class.
+     * The settings and the version of the category inclusion flags a block pool was compiled for.
      */
-    public CategoryTree() {
+    private record BlockPoolKey(int difficulty, boolean includeLowerDifficulties, boolean treatAllAsIndividualBlocks,
+                                int inclusionVersion) {
     }
 
     /**
-     * Method to convert the CategoryTree to a LinkedHashMap.
-     *
-     * @return LinkedHashMap<String, Object>
+     * The constructor for the CategoryTree class.
      */
-    public LinkedHashMap<String, Object> toMap() {
-        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
-        for (Category category : categories) {
-            map.put(category.name, category.toMap());
-        }
-        return map;
+    public CategoryTree() {
     }
 
     /**
      * Method to parse a YAML file and create a CategoryTree from it.
+     * Every block name is resolved to a material of the server once, names that can't be resolved are removed.
+     * The problems found in the file can be read with getLoadProblems afterwards.
+     * The validated tree is stored in a binary snapshot next to the file, which is loaded instead of the YAML as long
+     * as neither the file nor the server version changed.
+     * The changes made to the categories are read from the overrides file and applied on top of the YAML file, the
+     * problems found in it can be read with getOverrideProblems afterwards.
      *
-     * @param filePath The path to the YAML file.
-     * @throws FileNotFoundException If the file is not found.
+     * @param filePath      The path to the YAML file.
+     * @param overridesPath The path to the overrides file, it doesn't have to exist.
+     * @throws IOException If one of the files can't be read.
      */
-    public void parseYaml(String filePath)
-            throws FileNotFoundException {
-        Yaml yaml = new Yaml();
+    public void parseYaml(String filePath, String overridesPath)
+            throws IOException {
+        long start = System.nanoTime();
+        byte[] content;
+        try (FileInputStream inputStream = new FileInputStream(filePath)) {
+            content = inputStream.readAllBytes();
+        }
+        byte[] contentHash = CategoryTreeSnapshot.hash(content);
+        String serverVersion = Bukkit.getBukkitVersion();
+        File snapshotFile = getSnapshotFile(filePath);
 
-        FileInputStream inputStream = new FileInputStream(filePath);
+        CategoryTreeSnapshot snapshot = CategoryTreeSnapshot.read(snapshotFile, contentHash, serverVersion);
+        if (snapshot != null) {
+            this.categories = snapshot.getCategories();
+            this.loadProblems = snapshot.getProblems();
+            this.loadedFromSnapshot = true;
+        } else {
+            parseYaml(content);
+            this.loadedFromSnapshot = false;
+            try {
+                CategoryTreeSnapshot.write(snapshotFile, categories, loadProblems, contentHash, serverVersion);
+            } catch (IOException e) {
+                GSBlockShuffle.LOGGER.log(Level.WARNING, "Error writing block list snapshot", e);
+            }
+        }
+        this.overrides = new CategoryOverrides(categories);
+        this.overrideProblems = new ArrayList<>();
+        this.overrides.load(new File(overridesPath), overrideProblems);
+        this.compiledTree = new CompiledCategoryTree(categories);
+        invalidateBlockPools();
+        this.loadNanos = System.nanoTime() - start;
+    }
+
+    private void parseYaml(byte[] content) {
+        Yaml yaml = new Yaml();
 
-        LinkedHashMap<String, Object> map = yaml.load(inputStream);
+        Object root = yaml.load(new ByteArrayInputStream(content));
+        ArrayList<String> problems = new ArrayList<>();
         ArrayList<Category> categories = new ArrayList<>();
-        for (String key : map.keySet()) {
-            //TODO safe cast
-            Category category = new Category((LinkedHashMap<String, Object>) map.get(key), key);
-            categories.add(category);
+        if (root instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String name = String.valueOf(entry.getKey());
+                if (entry.getValue() instanceof Map<?, ?> categoryMap) {
+                    categories.add(new Category(categoryMap, name, name, problems));
+                } else {
+                    problems.add(name + ": expected a category but found " + entry.getValue() + ", skipped");
+                }
+            }
+        } else {
+            problems.add("the file doesn't contain any categories");
         }
+        BlockListValidator.validate(categories, problems);
         this.categories = categories;
+        this.loadProblems = problems;
     }
 
     /**
-     * Method to dump the CategoryTree to a YAML file.
-     *
      * @param filePath The path to the YAML file.
+     * @return The snapshot file next to the YAML file, "block_list_categorized.bin" for "block_list_categorized.yml".
      */
-    public void dumpYaml(String filePath) {
-        Yaml yaml = new Yaml();
-        LinkedHashMap<String, Object> map = this.toMap();
-        String output = yaml.dump(map);
-        try {
-            FileWriter writer = new FileWriter(filePath);
-            writer.write(output);
-            writer.close();
-        } catch (IOException e) {
-            // TODO Implement a logger
-            e.printStackTrace();
+    private static File getSnapshotFile(String filePath) {
+        return new File((filePath.endsWith(".yml") ? filePath.substring(0, filePath.length() - 4) : filePath) + ".bin");
+    }
+
+    /**
+     * @return Whether the tree was last loaded from the binary snapshot instead of the YAML file.
+     */
+    public boolean isLoadedFromSnapshot() {
+        return loadedFromSnapshot;
+    }
+
+    /**
+     * @return The time the tree took to load the last time it was parsed, in nanoseconds.
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * @return The problems found when the tree was last parsed, each starting with the YAML path of the value.
+     */
+    public List<String> getLoadProblems() {
+        return loadProblems;
+    }
+
+    /**
+     * @return The problems found in the overrides file when the tree was last parsed.
+     */
+    public List<String> getOverrideProblems() {
+        return overrideProblems;
+    }
+
+    /**
+     * Returns the pool of blocks that are included and match the difficulty setting.
+     * The pool is compiled once per combination of the settings that affect it and cached until the category
+     * inclusion flags change.
+     *
+     * @param settings The settings of the game.
+     * @return BlockPool
+     */
+    public BlockPool getBlockPool(YamlConfiguration settings) {
+        return getBlockPool(settings.getInt("difficulty"), settings.getBoolean("includeLowerDifficulties"),
+                settings.getBoolean("treatAllAsIndividualBlocks"));
+    }
+
+    /**
+     * Returns the pool of blocks that are included and match the difficulty.
+     *
+     * @param difficulty                 The difficulty of the game, -1 matches every difficulty.
+     * @param includeLowerDifficulties   Whether blocks of lower difficulties are included.
+     * @param treatAllAsIndividualBlocks Whether every block is its own pack.
+     * @return BlockPool
+     */
+    public BlockPool getBlockPool(int difficulty, boolean includeLowerDifficulties, boolean treatAllAsIndividualBlocks) {
+        BlockPoolKey key = new BlockPoolKey(difficulty, includeLowerDifficulties, treatAllAsIndividualBlocks, inclusionVersion);
+        BlockPool blockPool = blockPools.get(key);
+        if (blockPool == null) {
+            blockPool = compiledTree.buildBlockPool(difficulty, includeLowerDifficulties, treatAllAsIndividualBlocks);
+            blockPools.put(key, blockPool);
         }
+        return blockPool;
     }
-    /*
-    * Returns a list of blocks that are included and match the difficulty setting
+
+    /**
+     * Drops the cached block pools, must be called whenever a category is included, excluded or changes difficulty.
      */
-    public ArrayList<ArrayList<ArrayList<String>>> getBlockList(YamlConfiguration settings) {
-        ArrayList<ArrayList<ArrayList<String>>> blocks = new ArrayList<>();
+    public void invalidateBlockPools() {
+        inclusionVersion++;
+        blockPools.clear();
+        Arrays.fill(difficultyIndices, null);
+    }
 
-        for (Category category : categories) {
-            ArrayList<ArrayList<ArrayList<String>>> blockList = category.getBlockSet(settings);
-            if (blockList != null) {
-                if(!blockList.isEmpty()){
-                    blocks.addAll(blockList);
-                }
-            }
+    /**
+     * Returns the pool sizes of every difficulty for the includeLowerDifficulties and treatAllAsIndividualBlocks
+     * settings. The index is cached together with the block pools.
+     *
+     * @param settings The settings of the game.
+     * @return DifficultyIndex
+     */
+    public DifficultyIndex getDifficultyIndex(YamlConfiguration settings) {
+        boolean includeLowerDifficulties = settings.getBoolean("includeLowerDifficulties");
+        boolean treatAllAsIndividualBlocks = settings.getBoolean("treatAllAsIndividualBlocks");
+        int index = (includeLowerDifficulties ? 2 : 0) + (treatAllAsIndividualBlocks ? 1 : 0);
+        if (difficultyIndices[index] == null) {
+            difficultyIndices[index] = new DifficultyIndex(compiledTree, includeLowerDifficulties, treatAllAsIndividualBlocks);
         }
+        return difficultyIndices[index];
+    }
 
-        return blocks;
+    /**
+     * @return The compiled form of the tree, compiled when the tree is parsed.
+     */
+    public CompiledCategoryTree getCompiledTree() {
+        return compiledTree;
     }
 
     public ArrayList<String> getAllBlocks() {
@@ -105,9 +227,12 @@ public class CategoryTree {
     }
 
     /**
-     * Save the configuration to "plugins\GSBlockShuffle\block_list_categorized.yml"
+     * Returns the changes made to the categories as the content of "plugins\GSBlockShuffle\block_list_overrides.yml".
+     * The block list itself is never written.
+     *
+     * @return The content of the overrides file.
      */
-    public void saveConfiguration(String filePath) {
-        this.dumpYaml(filePath);
+    public String saveOverridesToString() {
+        return overrides.saveToString();
     }
 }
\ No newline at end of file
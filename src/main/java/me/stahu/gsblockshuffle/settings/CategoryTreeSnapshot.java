@@ -0,0 +1,213 @@
+package me.stahu.gsblockshuffle.settings;
+
+import org.bukkit.Material;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CategoryTreeSnapshot class stores a validated category tree in a compact binary file, so the block list doesn't
+ * have to be parsed from YAML on every start.
+ * Blocks are stored as Material ordinals, which are only valid for the server version the snapshot was written on.
+ * A snapshot is therefore only read back if the hash of the YAML file, the server version and the version of the
+ * validation rules all match.
+ */
+public final class CategoryTreeSnapshot {
+    private static final int MAGIC = 0x47534254; // "GSBT"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+    private static final Material[] MATERIALS = Material.values();
+
+    private final ArrayList<Category> categories;
+    private final ArrayList<String> problems;
+
+    private CategoryTreeSnapshot(ArrayList<Category> categories, ArrayList<String> problems) {
+        this.categories = categories;
+        this.problems = problems;
+    }
+
+    /**
+     * @return The top level categories of the snapshot.
+     */
+    public ArrayList<Category> getCategories() {
+        return categories;
+    }
+
+    /**
+     * @return The problems that were found when the YAML file of the snapshot was validated.
+     */
+    public ArrayList<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @param content The content of a file.
+     * @return The SHA-256 hash of the content.
+     */
+    public static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * This method writes a validated tree to a snapshot file.
+     * Every block name of the tree must be the name of a material.
+     *
+     * @param file          The snapshot file.
+     * @param categories    The top level categories of the tree.
+     * @param problems      The problems found when the tree was validated.
+     * @param contentHash   The hash of the YAML file the tree was parsed from.
+     * @param serverVersion The version of the server.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(File file, List<Category> categories, List<String> problems, byte[] contentHash,
+                             String serverVersion) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(contentHash.length);
+            out.write(contentHash);
+            out.writeUTF(serverVersion);
+            out.writeInt(BlockListValidator.RULES_VERSION);
+            out.writeInt(MATERIALS.length);
+            out.writeInt(problems.size());
+            for (String problem : problems) {
+                out.writeUTF(problem);
+            }
+            out.writeInt(categories.size());
+            for (Category category : categories) {
+                writeCategory(out, category);
+            }
+        }
+    }
+
+    private static void writeCategory(DataOutputStream out, Category category) throws IOException {
+        out.writeUTF(category.name);
+        out.writeBoolean(category.isIncluded);
+        out.writeInt(category.difficulty);
+        out.writeDouble(category.weight);
+        if (category.blockWeights == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(category.blockWeights.size());
+            for (Map.Entry<String, Double> entry : category.blockWeights.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeDouble(entry.getValue());
+            }
+        }
+        out.writeBoolean(category.elements != null);
+        if (category.elements != null) {
+            out.writeInt(category.elements.size());
+            for (ArrayList<String> element : category.elements) {
+                out.writeInt(element.size());
+                for (String blockName : element) {
+                    out.writeShort(Material.valueOf(blockName).ordinal());
+                }
+            }
+        } else {
+            out.writeInt(category.subCategories.size());
+            for (Category subcategory : category.subCategories) {
+                writeCategory(out, subcategory);
+            }
+        }
+    }
+
+    /**
+     * This method reads a snapshot file if it was written for the same YAML content and server version.
+     *
+     * @param file          The snapshot file.
+     * @param contentHash   The hash of the current YAML file.
+     * @param serverVersion The version of the server.
+     * @return The snapshot, null if the file doesn't exist, is out of date or can't be read.
+     */
+    public static CategoryTreeSnapshot read(File file, byte[] contentHash, String serverVersion) {
+        if (!file.isFile()) {
+            return null;
+        }
+        // every counted item takes at least a byte, so no count of an intact file is larger than the file
+        long maxCount = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != HASH_LENGTH) {
+                return null;
+            }
+            byte[] storedHash = new byte[HASH_LENGTH];
+            in.readFully(storedHash);
+            if (!Arrays.equals(storedHash, contentHash) || !in.readUTF().equals(serverVersion)
+                    || in.readInt() != BlockListValidator.RULES_VERSION || in.readInt() != MATERIALS.length) {
+                return null;
+            }
+            int problemCount = readCount(in, maxCount);
+            ArrayList<String> problems = new ArrayList<>(problemCount);
+            for (int i = 0; i < problemCount; i++) {
+                problems.add(in.readUTF());
+            }
+            int categoryCount = readCount(in, maxCount);
+            ArrayList<Category> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                categories.add(readCategory(in, maxCount));
+            }
+            return new CategoryTreeSnapshot(categories, problems);
+        } catch (IOException | RuntimeException e) {
+            // a damaged snapshot is parsed again from the YAML file
+            return null;
+        }
+    }
+
+    private static int readCount(DataInputStream in, long maxCount) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > maxCount) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static Category readCategory(DataInputStream in, long maxCount) throws IOException {
+        Category category = new Category(in.readUTF(), in.readBoolean(), in.readInt(), null);
+        category.weight = in.readDouble();
+        int blockWeightCount = in.readInt();
+        if (blockWeightCount < -1 || blockWeightCount > maxCount) {
+            throw new IOException("Invalid count " + blockWeightCount);
+        }
+        if (blockWeightCount >= 0) {
+            category.blockWeights = new LinkedHashMap<>();
+            for (int i = 0; i < blockWeightCount; i++) {
+                category.blockWeights.put(in.readUTF(), in.readDouble());
+            }
+        }
+        if (in.readBoolean()) {
+            int elementCount = readCount(in, maxCount);
+            category.elements = new ArrayList<>(elementCount);
+            for (int i = 0; i < elementCount; i++) {
+                int blockCount = readCount(in, maxCount);
+                ArrayList<String> element = new ArrayList<>(blockCount);
+                for (int j = 0; j < blockCount; j++) {
+                    element.add(MATERIALS[in.readUnsignedShort()].name());
+                }
+                category.elements.add(element);
+            }
+        } else {
+            int subcategoryCount = readCount(in, maxCount);
+            category.subCategories = new ArrayList<>(subcategoryCount);
+            for (int i = 0; i < subcategoryCount; i++) {
+                category.subCategories.add(readCategory(in, maxCount));
+            }
+        }
+        return category;
+    }
+}
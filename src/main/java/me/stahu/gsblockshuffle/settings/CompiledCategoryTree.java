@@ -0,0 +1,422 @@
+package me.stahu.gsblockshuffle.settings;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The CompiledCategoryTree class is the flattened form of a CategoryTree that block pools are built from.
+ * Every element (a block together with the names that count as the same block) is a range of Material ordinals in a
+ * single backing array. Leaf categories are ranges of elements, sorted by difficulty so the leaves of one difficulty
+ * are a contiguous range.
+ * The inclusion flags are read from the categories when a pool is built, the structure only has to be compiled again
+ * when the tree is parsed.
+ */
+public class CompiledCategoryTree {
+    private static final Material[] MATERIALS = Material.values();
+
+    // Material ordinals of every element, element i spans [elementOffsets[i], elementOffsets[i + 1])
+    private final short[] materials;
+    private final int[] elementOffsets;
+    // weight of every element from the "weights" of its category
+    private final double[] elementWeights;
+
+    // every category in depth-first order, parents come before their subcategories
+    private final Category[] nodes;
+    private final int[] nodeParents;
+    // product of the weights of a category and every category above it
+    private final double[] nodePathWeights;
+    // the elements under a category are [nodeElementStarts[i], nodeElementEnds[i])
+    private final int[] nodeElementStarts;
+    private final int[] nodeElementEnds;
+    private final IdentityHashMap<Category, Integer> nodeIndices;
+
+    // leaf categories sorted by difficulty
+    private final int[] partNodes;
+    private final int[] partDifficulties;
+    // highest difficulty of the categories above the leaf
+    private final int[] partGateDifficulties;
+    // node whose pack the leaf is merged into when blocks are grouped ("base" and "variant" leaves), -1 otherwise
+    private final int[] partGroups;
+    private final boolean[] partTopLevel;
+
+    // distinct leaf difficulties in ascending order, leaves of difficulties[i] are [difficultyStarts[i], difficultyEnds[i])
+    private final int[] difficulties;
+    private final int[] difficultyStarts;
+    private final int[] difficultyEnds;
+
+    /**
+     * The constructor for the CompiledCategoryTree class.
+     * The block names are expected to be resolved by BlockListValidator, names that don't match any material are
+     * left out.
+     *
+     * @param categories The top level categories of the tree.
+     */
+    public CompiledCategoryTree(ArrayList<Category> categories) {
+        ArrayList<Category> nodeList = new ArrayList<>();
+        ArrayList<Integer> parentList = new ArrayList<>();
+        for (Category category : categories) {
+            collectNodes(category, -1, nodeList, parentList);
+        }
+        int nodeCount = nodeList.size();
+        nodes = nodeList.toArray(new Category[0]);
+        nodeParents = new int[nodeCount];
+        nodePathWeights = new double[nodeCount];
+        nodeIndices = new IdentityHashMap<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodeParents[i] = parentList.get(i);
+            nodePathWeights[i] = Math.max(nodes[i].weight, 0) * (nodeParents[i] < 0 ? 1 : nodePathWeights[nodeParents[i]]);
+            nodeIndices.put(nodes[i], i);
+        }
+
+        // elements are laid out in depth-first order so every category covers a contiguous range
+        short[] materialBuffer = new short[256];
+        int materialCount = 0;
+        int[] offsetBuffer = new int[64];
+        double[] weightBuffer = new double[64];
+        int elementCount = 0;
+        nodeElementStarts = new int[nodeCount];
+        nodeElementEnds = new int[nodeCount];
+        int leafCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodeElementStarts[i] = elementCount;
+            if (nodes[i].elements == null) {
+                continue;
+            }
+            leafCount++;
+            for (ArrayList<String> element : nodes[i].elements) {
+                int elementStart = materialCount;
+                for (String blockName : element) {
+                    Material material = Material.getMaterial(blockName);
+                    if (material == null) {
+                        continue;
+                    }
+                    if (materialCount == materialBuffer.length) {
+                        materialBuffer = Arrays.copyOf(materialBuffer, materialCount * 2);
+                    }
+                    materialBuffer[materialCount++] = (short) material.ordinal();
+                }
+                if (materialCount == elementStart) {
+                    continue;
+                }
+                if (elementCount + 1 >= offsetBuffer.length) {
+                    offsetBuffer = Arrays.copyOf(offsetBuffer, offsetBuffer.length * 2);
+                    weightBuffer = Arrays.copyOf(weightBuffer, offsetBuffer.length);
+                }
+                weightBuffer[elementCount] = Math.max(nodes[i].getBlockWeight(element), 0);
+                offsetBuffer[elementCount++] = elementStart;
+            }
+        }
+        offsetBuffer[elementCount] = materialCount;
+        materials = Arrays.copyOf(materialBuffer, materialCount);
+        elementOffsets = Arrays.copyOf(offsetBuffer, elementCount + 1);
+        elementWeights = Arrays.copyOf(weightBuffer, elementCount);
+        // a leaf ends where the next category starts, every other category where its last leaf ends
+        for (int i = nodeCount - 1; i >= 0; i--) {
+            if (nodes[i].elements != null) {
+                nodeElementEnds[i] = i + 1 < nodeCount ? nodeElementStarts[i + 1] : elementCount;
+            } else {
+                nodeElementEnds[i] = Math.max(nodeElementEnds[i], nodeElementStarts[i]);
+            }
+            if (nodeParents[i] >= 0) {
+                nodeElementEnds[nodeParents[i]] = Math.max(nodeElementEnds[nodeParents[i]], nodeElementEnds[i]);
+            }
+        }
+
+        Integer[] leaves = new Integer[leafCount];
+        int leafIndex = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (nodes[i].elements != null) {
+                leaves[leafIndex++] = i;
+            }
+        }
+        // stable sort, leaves of the same difficulty stay in tree order
+        Arrays.sort(leaves, (a, b) -> Integer.compare(nodes[a].difficulty, nodes[b].difficulty));
+
+        partNodes = new int[leafCount];
+        partDifficulties = new int[leafCount];
+        partGateDifficulties = new int[leafCount];
+        partGroups = new int[leafCount];
+        partTopLevel = new boolean[leafCount];
+        int distinctDifficulties = 0;
+        for (int p = 0; p < leafCount; p++) {
+            int node = leaves[p];
+            partNodes[p] = node;
+            partDifficulties[p] = nodes[node].difficulty;
+            int gate = Integer.MIN_VALUE;
+            for (int parent = nodeParents[node]; parent >= 0; parent = nodeParents[parent]) {
+                gate = Math.max(gate, nodes[parent].difficulty);
+            }
+            partGateDifficulties[p] = gate;
+            String name = nodes[node].name;
+            partGroups[p] = nodeParents[node] >= 0 && (name.equals("base") || name.equals("variant")) ? nodeParents[node] : -1;
+            partTopLevel[p] = nodeParents[node] < 0;
+            if (p == 0 || partDifficulties[p] != partDifficulties[p - 1]) {
+                distinctDifficulties++;
+            }
+        }
+
+        difficulties = new int[distinctDifficulties];
+        difficultyStarts = new int[distinctDifficulties];
+        difficultyEnds = new int[distinctDifficulties];
+        int d = -1;
+        for (int p = 0; p < leafCount; p++) {
+            if (p == 0 || partDifficulties[p] != partDifficulties[p - 1]) {
+                d++;
+                difficulties[d] = partDifficulties[p];
+                difficultyStarts[d] = p;
+            }
+            difficultyEnds[d] = p + 1;
+        }
+    }
+
+    private static void collectNodes(Category category, int parent, ArrayList<Category> nodeList, ArrayList<Integer> parentList) {
+        int index = nodeList.size();
+        nodeList.add(category);
+        parentList.add(parent);
+        if (category.subCategories != null) {
+            for (Category subcategory : category.subCategories) {
+                collectNodes(subcategory, index, nodeList, parentList);
+            }
+        }
+    }
+
+    /**
+     * This method builds the pool of blocks that are included and match the difficulty.
+     * A category is only drawn from if it and every category above it are included and not above the difficulty.
+     * "base" and "variant" leaves are merged into one pack of their parent unless every block is treated as an
+     * individual block, other leaves give a pack per element.
+     * A pack is weighted by the weights of its categories and, for a pack of a single element, the weight of the
+     * element. The elements of a merged pack are weighted by the weight of their leaf and their own weight.
+     * Packs and elements with a weight of 0 are left out.
+     * Every pack gets an id that stays the same in the pools of all difficulties: the element of a single element pack,
+     * or the element count plus the parent node of a merged pack.
+     *
+     * @param difficulty                 The difficulty of the game, -1 matches every difficulty.
+     * @param includeLowerDifficulties   Whether blocks of lower difficulties are included.
+     * @param treatAllAsIndividualBlocks Whether every block is its own pack.
+     * @return BlockPool
+     */
+    public BlockPool buildBlockPool(int difficulty, boolean includeLowerDifficulties, boolean treatAllAsIndividualBlocks) {
+        boolean[] included = getIncludedNodes();
+
+        int partStart = 0;
+        int partEnd = partNodes.length;
+        if (difficulty != -1) {
+            int d = findDifficulty(difficulty);
+            if (includeLowerDifficulties || treatAllAsIndividualBlocks) {
+                // every leaf up to and including the difficulty
+                int lastLowerOrEqual = d >= 0 ? d : -d - 2;
+                partEnd = lastLowerOrEqual >= 0 ? difficultyEnds[lastLowerOrEqual] : 0;
+            } else if (d >= 0) {
+                partStart = difficultyStarts[d];
+                partEnd = difficultyEnds[d];
+            } else {
+                partEnd = 0;
+            }
+        }
+
+        int[] packOffsets = new int[getElementCount() + 1];
+        int[] packElements = new int[getElementCount()];
+        double[] packWeights = new double[getElementCount()];
+        int[] packIds = new int[getElementCount()];
+        double[] packElementWeights = new double[getElementCount()];
+        int packCount = 0;
+        int packElementCount = 0;
+        LinkedHashMap<Integer, ArrayList<Integer>> groups = new LinkedHashMap<>();
+        for (int p = partStart; p < partEnd; p++) {
+            int node = partNodes[p];
+            if (!included[node] || (difficulty != -1 && partGateDifficulties[p] > difficulty)) {
+                continue;
+            }
+            if (!treatAllAsIndividualBlocks) {
+                // leaves at the top of the tree are never drawn when blocks are grouped
+                if (partTopLevel[p]) {
+                    continue;
+                }
+                if (partGroups[p] >= 0) {
+                    groups.computeIfAbsent(partGroups[p], k -> new ArrayList<>()).add(node);
+                    continue;
+                }
+            }
+            for (int element = nodeElementStarts[node]; element < nodeElementEnds[node]; element++) {
+                double weight = nodePathWeights[node] * elementWeights[element];
+                if (weight > 0) {
+                    packWeights[packCount] = weight;
+                    packIds[packCount] = element;
+                    packOffsets[packCount++] = packElementCount;
+                    packElementWeights[packElementCount] = 1;
+                    packElements[packElementCount++] = element;
+                }
+            }
+        }
+        for (Map.Entry<Integer, ArrayList<Integer>> group : groups.entrySet()) {
+            int packStart = packElementCount;
+            for (int node : group.getValue()) {
+                for (int element = nodeElementStarts[node]; element < nodeElementEnds[node]; element++) {
+                    double weight = Math.max(nodes[node].weight, 0) * elementWeights[element];
+                    if (weight > 0) {
+                        packElementWeights[packElementCount] = weight;
+                        packElements[packElementCount++] = element;
+                    }
+                }
+            }
+            double weight = nodePathWeights[group.getKey()];
+            if (packElementCount > packStart && weight > 0) {
+                packWeights[packCount] = weight;
+                packIds[packCount] = getElementCount() + group.getKey();
+                packOffsets[packCount++] = packStart;
+            } else {
+                packElementCount = packStart;
+            }
+        }
+        packOffsets[packCount] = packElementCount;
+
+        return new BlockPool(this, Arrays.copyOf(packOffsets, packCount + 1), Arrays.copyOf(packElements, packElementCount),
+                Arrays.copyOf(packIds, packCount), packWeights, packElementWeights);
+    }
+
+    /**
+     * @return Whether each node and every category above it is included.
+     */
+    private boolean[] getIncludedNodes() {
+        boolean[] included = new boolean[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            included[i] = nodes[i].isIncluded && (nodeParents[i] < 0 || included[nodeParents[i]]);
+        }
+        return included;
+    }
+
+    /**
+     * @return The index of the difficulty in difficulties, or (-(insertion point) - 1) if no leaf has it.
+     */
+    private int findDifficulty(int difficulty) {
+        return Arrays.binarySearch(difficulties, difficulty);
+    }
+
+    /**
+     * @return The distinct non-negative difficulties of all categories in ascending order.
+     */
+    public int[] getDifficulties() {
+        return Arrays.stream(nodes).mapToInt(node -> node.difficulty).filter(difficulty -> difficulty >= 0).distinct().sorted().toArray();
+    }
+
+    /**
+     * @return The number of elements in the tree.
+     */
+    public int getElementCount() {
+        return elementOffsets.length - 1;
+    }
+
+    /**
+     * @param category A category of this tree.
+     * @return The number of elements under the category, 0 if the category isn't part of this tree.
+     */
+    public int getElementCount(Category category) {
+        Integer node = nodeIndices.get(category);
+        return node == null ? 0 : nodeElementEnds[node] - nodeElementStarts[node];
+    }
+
+    /**
+     * @param category A category of this tree.
+     * @return The names of the first material of every element under the category.
+     */
+    public String[] getElementNames(Category category) {
+        Integer node = nodeIndices.get(category);
+        if (node == null) {
+            return new String[0];
+        }
+        String[] names = new String[nodeElementEnds[node] - nodeElementStarts[node]];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = MATERIALS[materials[elementOffsets[nodeElementStarts[node] + i]]].name();
+        }
+        return names;
+    }
+
+    /**
+     * @param category A category of this tree.
+     * @return The first material under the category that exists as an item, null if there is none.
+     */
+    public Material getIconMaterial(Category category) {
+        Integer node = nodeIndices.get(category);
+        if (node == null) {
+            return null;
+        }
+        for (int i = elementOffsets[nodeElementStarts[node]]; i < elementOffsets[nodeElementEnds[node]]; i++) {
+            Material material = MATERIALS[materials[i]];
+            if (material.isItem() && !material.isAir()) {
+                return material;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param element The index of the element.
+     * @return A new list with the names of the materials of the element.
+     */
+    public ArrayList<String> getBlockNames(int element) {
+        ArrayList<String> blockNames = new ArrayList<>(elementOffsets[element + 1] - elementOffsets[element]);
+        for (int i = elementOffsets[element]; i < elementOffsets[element + 1]; i++) {
+            blockNames.add(MATERIALS[materials[i]].name());
+        }
+        return blockNames;
+    }
+
+    /**
+     * @param element The index of the element.
+     * @return EnumSet of the materials that count as finding the element.
+     */
+    public EnumSet<Material> getTargets(int element) {
+        EnumSet<Material> targets = EnumSet.noneOf(Material.class);
+        for (int i = elementOffsets[element]; i < elementOffsets[element + 1]; i++) {
+            targets.add(MATERIALS[materials[i]]);
+        }
+        return targets;
+    }
+
+    /**
+     * Estimates the heap used by the compiled arrays, not counting the categories they refer to.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateHeapBytes() {
+        return HeapEstimate.shortArray(materials.length)
+                + HeapEstimate.intArray(elementOffsets.length)
+                + HeapEstimate.doubleArray(elementWeights.length)
+                + HeapEstimate.doubleArray(nodePathWeights.length)
+                + HeapEstimate.referenceArray(nodes.length)
+                + 4 * HeapEstimate.intArray(nodes.length)
+                + HeapEstimate.identityMap(nodes.length)
+                + 4 * HeapEstimate.intArray(partNodes.length)
+                + HeapEstimate.booleanArray(partTopLevel.length)
+                + 3 * HeapEstimate.intArray(difficulties.length);
+    }
+
+    /**
+     * Estimates the heap used by the element lists of the categories: the lists and the block name Strings.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateListHeapBytes() {
+        long bytes = 0;
+        for (Category node : nodes) {
+            if (node.elements == null) {
+                continue;
+            }
+            bytes += HeapEstimate.arrayList(node.elements.size());
+            for (ArrayList<String> element : node.elements) {
+                bytes += HeapEstimate.arrayList(element.size());
+                for (String blockName : element) {
+                    bytes += HeapEstimate.string(blockName.length());
+                }
+            }
+        }
+        return bytes;
+    }
+}
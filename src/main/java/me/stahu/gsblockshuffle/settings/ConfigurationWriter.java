@@ -0,0 +1,107 @@
+package me.stahu.gsblockshuffle.settings;
+
+import me.stahu.gsblockshuffle.GSBlockShuffle;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * The ConfigurationWriter class writes configuration files off the server thread.
+ * The content of a file is taken on the server thread when it is saved and written by an asynchronous task once the
+ * save delay has passed, every save of the same file within the delay is collapsed into a single write.
+ * Files are written to a temporary file first and moved over the old file, so a file is never left half written.
+ */
+public class ConfigurationWriter {
+    private final Plugin plugin;
+    // content waiting for the save delay to pass, keyed by file
+    private final LinkedHashMap<Path, String> pendingWrites = new LinkedHashMap<>();
+    // content handed to the asynchronous task, an entry is removed once it is written, guarded by writeLock
+    private final LinkedHashMap<Path, String> inFlightWrites = new LinkedHashMap<>();
+    private final Object writeLock = new Object();
+    private int flushTaskId = -1;
+
+    /**
+     * The constructor for the ConfigurationWriter class.
+     *
+     * @param plugin The plugin the write tasks are scheduled for.
+     */
+    public ConfigurationWriter(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * This method queues the content to be written to the file. Must be called from the server thread.
+     * A newer content of the same file replaces the queued one.
+     *
+     * @param file       The file to write.
+     * @param content    The full content of the file.
+     * @param delayTicks The number of ticks to wait for further saves before writing.
+     */
+    public void write(Path file, String content, long delayTicks) {
+        pendingWrites.put(file, content);
+        if (flushTaskId == -1) {
+            flushTaskId = Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, this::flushAsync, Math.max(delayTicks, 0));
+        }
+    }
+
+    private void flushAsync() {
+        flushTaskId = -1;
+        handOverPendingWrites();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::writeInFlight);
+    }
+
+    private void handOverPendingWrites() {
+        synchronized (writeLock) {
+            // a newer content replaces the one that hasn't been written yet
+            inFlightWrites.putAll(pendingWrites);
+        }
+        pendingWrites.clear();
+    }
+
+    /**
+     * This method writes every queued file on the calling thread, including the files handed to an asynchronous task
+     * that hasn't written them yet, and waits for the writes that are in progress. Must be called from the server
+     * thread, before the files are read again and when the plugin is disabled.
+     */
+    public void flush() {
+        if (flushTaskId != -1) {
+            Bukkit.getScheduler().cancelTask(flushTaskId);
+            flushTaskId = -1;
+        }
+        handOverPendingWrites();
+        writeInFlight();
+    }
+
+    private void writeInFlight() {
+        synchronized (writeLock) {
+            for (Iterator<Map.Entry<Path, String>> writes = inFlightWrites.entrySet().iterator(); writes.hasNext(); ) {
+                Map.Entry<Path, String> write = writes.next();
+                try {
+                    writeAtomically(write.getKey(), write.getValue());
+                } catch (IOException e) {
+                    GSBlockShuffle.LOGGER.log(Level.SEVERE, "Error saving " + write.getKey().getFileName(), e);
+                }
+                writes.remove();
+            }
+        }
+    }
+
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tempFile, content);
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
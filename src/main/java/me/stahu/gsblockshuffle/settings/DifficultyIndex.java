@@ -0,0 +1,111 @@
+package me.stahu.gsblockshuffle.settings;
+
+import java.util.Arrays;
+
+/**
+ * The DifficultyIndex class holds the pool size of every difficulty for one combination of the
+ * includeLowerDifficulties and treatAllAsIndividualBlocks settings, and the next difficulty with a non-empty pool.
+ * Pool sizes only change at difficulties that a category has, they are computed there and spread into tables for
+ * every difficulty up to the difficulty hard cap.
+ */
+public class DifficultyIndex {
+    /**
+     * Difficulties up to this value are looked up in the tables, same as the hard cap of difficultyCap.
+     */
+    private static final int TABLE_LIMIT = 1000;
+
+    // distinct category difficulties in ascending order and the pool size at each of them
+    private final int[] difficulties;
+    private final int[] difficultyPoolSizes;
+    private final boolean cumulative;
+
+    private final int[] poolSizes;
+    private final int[] nextNonEmptyDifficulties;
+
+    /**
+     * The constructor for the DifficultyIndex class.
+     *
+     * @param compiledTree               The tree to index.
+     * @param includeLowerDifficulties   Whether blocks of lower difficulties are included.
+     * @param treatAllAsIndividualBlocks Whether every block is its own pack.
+     */
+    DifficultyIndex(CompiledCategoryTree compiledTree, boolean includeLowerDifficulties, boolean treatAllAsIndividualBlocks) {
+        // the leaf difficulty check ignores includeLowerDifficulties when every block is treated individually
+        this.cumulative = includeLowerDifficulties || treatAllAsIndividualBlocks;
+        this.difficulties = compiledTree.getDifficulties();
+        this.difficultyPoolSizes = new int[difficulties.length];
+        for (int i = 0; i < difficulties.length; i++) {
+            difficultyPoolSizes[i] = compiledTree.buildBlockPool(difficulties[i], includeLowerDifficulties, treatAllAsIndividualBlocks).size();
+        }
+
+        int tableSize = Math.min(difficulties.length == 0 ? 0 : difficulties[difficulties.length - 1], TABLE_LIMIT) + 1;
+        this.poolSizes = new int[tableSize];
+        this.nextNonEmptyDifficulties = new int[tableSize];
+        for (int difficulty = 0; difficulty < tableSize; difficulty++) {
+            poolSizes[difficulty] = searchPoolSize(difficulty);
+        }
+        int next = searchNextNonEmptyDifficulty(tableSize);
+        for (int difficulty = tableSize - 1; difficulty >= 0; difficulty--) {
+            if (poolSizes[difficulty] > 0) {
+                next = difficulty;
+            }
+            nextNonEmptyDifficulties[difficulty] = next;
+        }
+    }
+
+    /**
+     * @param difficulty The difficulty of the game.
+     * @return The number of packs in the pool of the difficulty.
+     */
+    public int getPoolSize(int difficulty) {
+        if (difficulty < 0) {
+            return 0;
+        }
+        if (difficulty < poolSizes.length) {
+            return poolSizes[difficulty];
+        }
+        return searchPoolSize(difficulty);
+    }
+
+    /**
+     * @param difficulty The difficulty to start from.
+     * @return The lowest difficulty that is not lower than the given one and has a non-empty pool, -1 if there is none.
+     */
+    public int getNextNonEmptyDifficulty(int difficulty) {
+        difficulty = Math.max(difficulty, 0);
+        if (difficulty < nextNonEmptyDifficulties.length) {
+            return nextNonEmptyDifficulties[difficulty];
+        }
+        return searchNextNonEmptyDifficulty(difficulty);
+    }
+
+    /**
+     * @return The highest difficulty in the lookup tables.
+     */
+    public int getMaxDifficulty() {
+        return poolSizes.length - 1;
+    }
+
+    private int searchPoolSize(int difficulty) {
+        int index = Arrays.binarySearch(difficulties, difficulty);
+        if (index >= 0) {
+            return difficultyPoolSizes[index];
+        }
+        // between two category difficulties the pool only stays the same if lower difficulties are included
+        int lower = -index - 2;
+        return cumulative && lower >= 0 ? difficultyPoolSizes[lower] : 0;
+    }
+
+    private int searchNextNonEmptyDifficulty(int difficulty) {
+        if (searchPoolSize(difficulty) > 0) {
+            return difficulty;
+        }
+        int index = Arrays.binarySearch(difficulties, difficulty);
+        for (int i = index >= 0 ? index + 1 : -index - 1; i < difficulties.length; i++) {
+            if (difficultyPoolSizes[i] > 0) {
+                return difficulties[i];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,114 @@
+package me.stahu.gsblockshuffle.settings;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+/**
+ * The DistinctPackDraw class draws packs of a pool without replacement, it is used to give every team a different
+ * block in a round. Every draw takes the same time no matter how many packs were drawn before, so a round costs
+ * O(teams) draws even when there are almost as many teams as packs.
+ * If all packs have the same weight it is a partial Fisher-Yates shuffle over the pack indices that only stores the
+ * positions it swapped, every draw is O(1). Otherwise packs are drawn by weight from the pool's Fenwick tree, the
+ * weight of a drawn pack is taken out of the tree nodes above it, every draw is O(log packs). Both only store what
+ * the round changed, so the memory is O(draws) no matter how large the pool is.
+ * With a shuffle bag the packs are drawn from the bag instead, so noRepeat still applies to every team.
+ * Once every pack has been drawn, which happens when there are more teams than packs, it starts over.
+ */
+public class DistinctPackDraw {
+    private final BlockPool blockPool;
+    private final ShuffleBag shuffleBag;
+    // positions of the virtual permutation that no longer hold their own index
+    private final HashMap<Integer, Integer> swapped = new HashMap<>();
+    private int drawn;
+    // weight units taken out of the nodes of the pool's Fenwick tree by the drawn packs
+    private final HashMap<Integer, Long> removedWeights = new HashMap<>();
+    private long remainingWeight;
+    // packs drawn from the shuffle bag in this round
+    private final HashSet<Integer> bagPacks = new HashSet<>();
+
+    /**
+     * The constructor for the DistinctPackDraw class.
+     *
+     * @param blockPool  The pool to draw from.
+     * @param shuffleBag The bag of the game to draw from when noRepeat is enabled, null to draw by the pack weights.
+     */
+    public DistinctPackDraw(BlockPool blockPool, ShuffleBag shuffleBag) {
+        if (blockPool.isEmpty()) {
+            throw new IllegalArgumentException("Block list is empty");
+        }
+        this.blockPool = blockPool;
+        this.shuffleBag = shuffleBag;
+        this.remainingWeight = blockPool.getTotalPackWeightUnits();
+    }
+
+    /**
+     * This method draws a pack that hasn't been drawn by this instance yet and returns an element of it.
+     *
+     * @param random The random number generator to draw with.
+     * @return The index of the element in the compiled tree.
+     */
+    public int drawElement(SplittableRandom random) {
+        int pack;
+        if (shuffleBag != null) {
+            pack = drawBagPack(random);
+        } else if (blockPool.hasUniformPackWeights()) {
+            pack = drawUniformPack(random);
+        } else {
+            pack = drawWeightedPack(random);
+        }
+        return blockPool.drawElement(pack, random);
+    }
+
+    private int drawBagPack(SplittableRandom random) {
+        if (bagPacks.size() == blockPool.size()) {
+            bagPacks.clear();
+        }
+        int pack = shuffleBag.drawPack(blockPool, random, bagPacks);
+        bagPacks.add(pack);
+        return pack;
+    }
+
+    private int drawUniformPack(SplittableRandom random) {
+        int packCount = blockPool.size();
+        if (drawn == packCount) {
+            swapped.clear();
+            drawn = 0;
+        }
+        int position = drawn + random.nextInt(packCount - drawn);
+        int pack = swapped.getOrDefault(position, position);
+        swapped.put(position, swapped.getOrDefault(drawn, drawn));
+        drawn++;
+        return pack;
+    }
+
+    private int drawWeightedPack(SplittableRandom random) {
+        int packCount = blockPool.size();
+        if (remainingWeight == 0) {
+            // every pack with a weight was drawn
+            removedWeights.clear();
+            remainingWeight = blockPool.getTotalPackWeightUnits();
+        }
+        // descend the tree to the pack whose range of the remaining weight holds the value
+        long value = random.nextLong(remainingWeight);
+        int position = 0;
+        for (int step = Integer.highestOneBit(packCount); step > 0; step >>= 1) {
+            int node = position + step;
+            if (node <= packCount) {
+                long nodeWeight = blockPool.getPackWeightNode(node) - removedWeights.getOrDefault(node, 0L);
+                if (nodeWeight <= value) {
+                    position = node;
+                    value -= nodeWeight;
+                }
+            }
+        }
+        int pack = position;
+
+        long weight = blockPool.getPackWeightUnits(pack);
+        for (int node = pack + 1; node <= packCount; node += node & -node) {
+            removedWeights.merge(node, weight, Long::sum);
+        }
+        remainingWeight -= weight;
+        return pack;
+    }
+}
@@ -0,0 +1,62 @@
+package me.stahu.gsblockshuffle.settings;
+
+/**
+ * Rough shallow sizes of common objects on a 64-bit JVM with compressed references, used by the debug footprint report.
+ */
+final class HeapEstimate {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private HeapEstimate() {
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    static long shortArray(int length) {
+        return align(ARRAY_HEADER + 2L * length);
+    }
+
+    static long intArray(int length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    static long doubleArray(int length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    static long longArray(int length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    static long booleanArray(int length) {
+        return align(ARRAY_HEADER + (long) length);
+    }
+
+    static long referenceArray(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    /**
+     * @return The size of an ArrayList and its backing array, assuming the array is not larger than needed.
+     */
+    static long arrayList(int size) {
+        return align(OBJECT_HEADER + 2 * 4 + REFERENCE) + referenceArray(size);
+    }
+
+    /**
+     * @return The size of a Latin-1 String and its byte array.
+     */
+    static long string(int length) {
+        return align(OBJECT_HEADER + 4 + 1 + 1 + REFERENCE) + align(ARRAY_HEADER + (long) length);
+    }
+
+    /**
+     * @return The size of an IdentityHashMap with boxed Integer values.
+     */
+    static long identityMap(int size) {
+        return align(OBJECT_HEADER + 4 * 4 + REFERENCE) + referenceArray(4 * size) + size * align(OBJECT_HEADER + 4);
+    }
+}
@@ -0,0 +1,82 @@
+package me.stahu.gsblockshuffle.settings;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * The ShuffleBag class draws the packs of a pool without repeating them within a game.
+ * The packs of the current pool are shuffled with a Fisher-Yates shuffle that is consumed one draw at a time, packs
+ * drawn from earlier pools are remembered by their pack id and skipped, so difficulty changes keep the history.
+ * Once every pack of the current pool has been drawn the pool's packs can be drawn again.
+ */
+public class ShuffleBag {
+    private final BitSet usedPacks = new BitSet();
+    private BlockPool blockPool;
+    private int[] order;
+    private int drawn;
+
+    /**
+     * This method draws a pack that hasn't been drawn yet in this game and returns an element of it.
+     *
+     * @param blockPool The pool to draw from, the bag is only rebuilt when it is a different pool than last time.
+     * @param random    The random number generator to draw with.
+     * @return The index of the element in the compiled tree.
+     */
+    public int drawElement(BlockPool blockPool, SplittableRandom random) {
+        return blockPool.drawElement(drawPack(blockPool, random, Set.of()), random);
+    }
+
+    /**
+     * This method draws a pack that hasn't been drawn yet in this game.
+     * If the bag starts over, the packs of roundPacks are kept as drawn in the new pass, so a pack is never drawn
+     * twice within a round as long as roundPacks doesn't hold every pack of the pool.
+     *
+     * @param blockPool  The pool to draw from, the bag is only rebuilt when it is a different pool than last time.
+     * @param random     The random number generator to draw with.
+     * @param roundPacks The packs of the pool already drawn in the current round.
+     * @return The index of the pack in the pool.
+     */
+    public int drawPack(BlockPool blockPool, SplittableRandom random, Set<Integer> roundPacks) {
+        if (blockPool.isEmpty()) {
+            throw new IllegalArgumentException("Block list is empty");
+        }
+        if (blockPool != this.blockPool) {
+            this.blockPool = blockPool;
+            order = new int[blockPool.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            drawn = 0;
+        }
+
+        while (true) {
+            if (drawn == order.length) {
+                // every pack of the pool was drawn or skipped as used, start the pool over
+                for (int pack = 0; pack < order.length; pack++) {
+                    usedPacks.clear(blockPool.getPackId(pack));
+                }
+                drawn = 0;
+                // the packs of this round move to the drawn part of the new pass
+                for (int i = 0; i < order.length; i++) {
+                    if (roundPacks.contains(order[i])) {
+                        int pack = order[i];
+                        order[i] = order[drawn];
+                        order[drawn++] = pack;
+                        usedPacks.set(blockPool.getPackId(pack));
+                    }
+                }
+            }
+            int swap = drawn + random.nextInt(order.length - drawn);
+            int pack = order[swap];
+            order[swap] = order[drawn];
+            order[drawn++] = pack;
+
+            int packId = blockPool.getPackId(pack);
+            if (!usedPacks.get(packId)) {
+                usedPacks.set(packId);
+                return pack;
+            }
+        }
+    }
+}
@@ -111,7 +111,7 @@ public class Sounds {
             return;
         }
 
-        for (Player player : teamsManager.getPlayersWithATeam()) {
+        for (Player player : teamsManager.getOnlineParticipants()) {
             player.playSound(player.getLocation(), Sound.BLOCK_NOTE_BLOCK_DIDGERIDOO, 1, pitch);
         }
     }
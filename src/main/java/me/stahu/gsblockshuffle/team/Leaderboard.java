@@ -0,0 +1,173 @@
+package me.stahu.gsblockshuffle.team;
+
+import org.bukkit.scoreboard.Team;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Leaderboard class holds the scores of the teams grouped into buckets of equal score, so the leader score and
+ * the place of a team don't require sorting or scanning all teams.
+ * Places follow the ex aequo rule: teams with the same score share a place and the following places are skipped.
+ */
+public class Leaderboard {
+    private final HashMap<Team, Integer> scores = new HashMap<>();
+    /**
+     * The teams of every score that at least one team has, highest score first.
+     */
+    private final TreeMap<Integer, LinkedHashSet<Team>> teamsByScore = new TreeMap<>(Collections.reverseOrder());
+    /**
+     * Fenwick tree of the number of teams per score, used to count the teams with a higher score.
+     */
+    private int[] teamCounts = new int[16];
+
+    /**
+     * A team with its place and score.
+     *
+     * @param team  The team.
+     * @param place The place of the team, starting at 1.
+     * @param score The score of the team.
+     */
+    public record Place(Team team, int place, int score) {
+    }
+
+    /**
+     * This method adds a team with a score of 0, a team that is already on the leaderboard keeps its score.
+     *
+     * @param team The team to add.
+     */
+    public void addTeam(Team team) {
+        if (!scores.containsKey(team)) {
+            setScore(team, 0);
+        }
+    }
+
+    /**
+     * This method sets the score of a team and adds the team if it isn't on the leaderboard yet.
+     *
+     * @param team  The team whose score is set.
+     * @param score The new score, must not be negative.
+     */
+    public void setScore(Team team, int score) {
+        if (score < 0) {
+            throw new IllegalArgumentException("Negative score " + score);
+        }
+        if (score + 1 >= teamCounts.length) {
+            growCounts(score + 2);
+        }
+        Integer oldScore = scores.put(team, score);
+        if (oldScore != null) {
+            if (oldScore == score) {
+                return;
+            }
+            LinkedHashSet<Team> bucket = teamsByScore.get(oldScore);
+            bucket.remove(team);
+            if (bucket.isEmpty()) {
+                teamsByScore.remove(oldScore);
+            }
+            updateCount(oldScore, -1);
+        }
+        teamsByScore.computeIfAbsent(score, k -> new LinkedHashSet<>()).add(team);
+        updateCount(score, 1);
+    }
+
+    /**
+     * @param team The team whose score is incremented, added with a score of 1 if it isn't on the leaderboard.
+     * @return The new score of the team.
+     */
+    public int incrementScore(Team team) {
+        int score = getScore(team) + 1;
+        setScore(team, score);
+        return score;
+    }
+
+    /**
+     * @param team The team whose score is returned.
+     * @return The score of the team, 0 if the team isn't on the leaderboard.
+     */
+    public int getScore(Team team) {
+        return scores.getOrDefault(team, 0);
+    }
+
+    /**
+     * @return The highest score of all teams, 0 if the leaderboard is empty.
+     */
+    public int getLeaderScore() {
+        return teamsByScore.isEmpty() ? 0 : teamsByScore.firstKey();
+    }
+
+    /**
+     * @param team The team to check.
+     * @return True if no team has a higher score than the team.
+     */
+    public boolean isLeading(Team team) {
+        return getScore(team) == getLeaderScore();
+    }
+
+    /**
+     * @param team The team whose place is returned.
+     * @return The place of the team, 1 plus the number of teams with a higher score.
+     */
+    public int getPlace(Team team) {
+        int score = getScore(team);
+        return 1 + scores.size() - countTeamsUpTo(score);
+    }
+
+    /**
+     * @return All teams with their place, highest score first.
+     */
+    public List<Place> getPlaces() {
+        List<Place> places = new ArrayList<>(scores.size());
+        for (Map.Entry<Integer, LinkedHashSet<Team>> bucket : teamsByScore.entrySet()) {
+            // every team of the bucket shares the place after the teams with a higher score
+            int place = places.size() + 1;
+            for (Team team : bucket.getValue()) {
+                places.add(new Place(team, place, bucket.getKey()));
+            }
+        }
+        return places;
+    }
+
+    public void clear() {
+        scores.clear();
+        teamsByScore.clear();
+        Arrays.fill(teamCounts, 0);
+    }
+
+    private void updateCount(int score, int delta) {
+        for (int i = score + 1; i < teamCounts.length; i += i & -i) {
+            teamCounts[i] += delta;
+        }
+    }
+
+    /**
+     * @return The number of teams with a score of at most the given score.
+     */
+    private int countTeamsUpTo(int score) {
+        int count = 0;
+        for (int i = Math.min(score + 1, teamCounts.length - 1); i > 0; i -= i & -i) {
+            count += teamCounts[i];
+        }
+        return count;
+    }
+
+    private void growCounts(int minLength) {
+        int length = teamCounts.length;
+        while (length < minLength) {
+            length *= 2;
+        }
+        teamCounts = new int[length];
+        for (Map.Entry<Integer, LinkedHashSet<Team>> bucket : teamsByScore.entrySet()) {
+            int size = bucket.getValue().size();
+            for (int i = bucket.getKey() + 1; i < length; i += i & -i) {
+                teamCounts[i] += size;
+            }
+        }
+    }
+}
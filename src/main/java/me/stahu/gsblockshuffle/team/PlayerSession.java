@@ -0,0 +1,119 @@
+package me.stahu.gsblockshuffle.team;
+
+import org.bukkit.Material;
+import org.bukkit.scoreboard.Team;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.UUID;
+
+/**
+ * The PlayerSession class holds all per-player state of the plugin: the team, the assigned block, the teleports and
+ * the pending requests.
+ * Sessions are keyed by the player's UUID and refer to other players by UUID, so no Player object is kept after
+ * the player quits. A session is created when the player joins and parked while the player is offline if they are
+ * in a team, otherwise it is released.
+ */
+public class PlayerSession {
+    private final UUID uuid;
+    private String name;
+    Team team;
+    /**
+     * The team the player was in when they quit, the player is added back to it when they rejoin.
+     */
+    Team parkedTeam;
+    boolean captain;
+    /**
+     * The player who sent this player a team request or invite that is waiting to be accepted.
+     */
+    UUID teamRequestSender;
+    /**
+     * The player who asked to teleport to this player.
+     */
+    UUID teleportRequester;
+    int teleportsUsed;
+    boolean teleportsUsedUp;
+    private ArrayList<String> blockNames;
+    private EnumSet<Material> targets;
+    private boolean foundBlock;
+
+    PlayerSession(UUID uuid, String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The team of the player, null if the player is in no team. Can be an eliminated team.
+     */
+    public Team getTeam() {
+        return team;
+    }
+
+    /**
+     * Assigns a block to the player for the current round.
+     *
+     * @param blockNames The names of the block, the first one is shown to the player.
+     * @param targets    The materials that count as finding the block.
+     */
+    public void assignBlock(ArrayList<String> blockNames, EnumSet<Material> targets) {
+        this.blockNames = blockNames;
+        this.targets = targets;
+    }
+
+    /**
+     * Removes the assigned block, the player no longer has to find it.
+     */
+    public void clearBlock() {
+        this.blockNames = null;
+        this.targets = null;
+    }
+
+    /**
+     * @return The names of the assigned block, null if the player has no block to find.
+     */
+    public ArrayList<String> getBlockNames() {
+        return blockNames;
+    }
+
+    /**
+     * @return The materials that count as finding the assigned block, null if the player has no block to find.
+     */
+    public EnumSet<Material> getTargets() {
+        return targets;
+    }
+
+    public boolean hasFoundBlock() {
+        return foundBlock;
+    }
+
+    public void setFoundBlock(boolean foundBlock) {
+        this.foundBlock = foundBlock;
+    }
+
+    /**
+     * Resets the state that only lasts for a round: the found flag and the used up teleports.
+     */
+    void resetRound() {
+        foundBlock = false;
+        teleportsUsedUp = false;
+    }
+
+    /**
+     * @return Whether the session holds anything worth keeping while the player is offline.
+     */
+    boolean isWorthParking() {
+        return parkedTeam != null || blockNames != null;
+    }
+}
@@ -14,35 +14,40 @@ import java.util.*;
 public class TeamsManager {
     public final HashSet<Team> teams = new HashSet<>();
     public final HashSet<Team> eliminatedTeams = new HashSet<>();
-    public final HashMap<Player, Team> teamCaptains = new HashMap<>();
     /**
-     * A HashMap that stores team join requests in the game.
-     * The key is the target of the request, and value is the sender.
+     * A HashMap that stores the session of every online player and of offline players that are parked.
+     * The team, captaincy, requests, teleports and assigned block of a player all live in the session.
      */
-    public final HashMap<Player, Player> teamRequests = new HashMap<>();
+    private final HashMap<UUID, PlayerSession> sessions = new HashMap<>();
     /**
-     * A HashMap that stores teleport requests between players in the game.
-     * The key is the player (Player) who sent the request, and the value is the player who received the request.
+     * The online players of the teams that are not eliminated, see getOnlineParticipants.
      */
-    public final HashMap<Player, Player> teleportRequests = new HashMap<>();
+    private List<Player> onlineParticipants = List.of();
     private final Scoreboard scoreboard;
     private final YamlConfiguration settings;
     private final GSBlockShuffle plugin;
     /**
      * A Set that stores teams who have used their teleports.
      */
-    public final Set<Team> teamTpUsed = new HashSet<>();
+    private final Set<Team> teamTpUsed = new HashSet<>();
     /**
-     * A Set that stores players who have used their teleports.
+     * A HashMap that stores the amount of times a team has teleported.
      */
-    public final Set<Player> playerTpUsed = new HashSet<>();
+    private final HashMap<Team, Integer> teamTpUsageCounter = new HashMap<>();
+    private final Leaderboard leaderboard = new Leaderboard();
+    private boolean showScoreboard = false;
     /**
-     * A HashMap that stores the amount of times a player or a team has teleported.
+     * True if team scores changed since the scoreboard was last set.
      */
-    private final HashMap<Object, Integer> tpUsageCounter = new HashMap<>();
-    private final HashMap<Team, Integer> teamPointsMap = new HashMap<>();
-    private boolean showScoreboard = false;
-    public final Map<String, Team> playersThatLeft = new HashMap<>();
+    private boolean scoreboardChanged = false;
+    /**
+     * The "Score" objective, kept registered between updates so only changed entries have to be sent.
+     */
+    private Objective scoreObjective;
+    /**
+     * The last score sent for each entry of the score objective.
+     */
+    private final HashMap<String, Integer> sentScores = new HashMap<>();
 
     public void setShowScoreboard(boolean showScoreboard) {
         this.showScoreboard = showScoreboard;
@@ -66,21 +71,73 @@ public class TeamsManager {
             if (isPlayerInNoTeam(player)) {
                 Team team = addTeam(player.getName(), ChatColor.WHITE);
                 addPlayerToTeam(player, team, false);
-                teamCaptains.put(player, team);
             }
         }
     }
 
-    public HashSet<Player> getPlayersWithATeam() {
-        HashSet<Player> playersWithATeam = new HashSet<>();
-        for (Team team : teams) {
-            HashSet<Player> players = new HashSet<>();
-            for (String entry : team.getEntries()) {
-                players.add(Bukkit.getPlayer(entry));
+    /**
+     * Returns the session of an online player, a new session is created if the player has none.
+     *
+     * @param player The player whose session is returned.
+     * @return PlayerSession
+     */
+    public PlayerSession getSession(Player player) {
+        PlayerSession session = sessions.get(player.getUniqueId());
+        if (session == null) {
+            session = new PlayerSession(player.getUniqueId(), player.getName());
+            sessions.put(player.getUniqueId(), session);
+        }
+        return session;
+    }
+
+    /**
+     * @param playerName The exact name of a player.
+     * @return The session of the player, null if the player is offline.
+     */
+    public PlayerSession getSession(String playerName) {
+        Player player = Bukkit.getPlayerExact(playerName);
+        return player == null ? null : getSession(player);
+    }
+
+    /**
+     * @return An unmodifiable view of the sessions of all online and parked players.
+     */
+    public Collection<PlayerSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Resets the state of every player and team that only lasts for a round.
+     */
+    public void resetRound() {
+        for (PlayerSession session : sessions.values()) {
+            session.resetRound();
+        }
+        teamTpUsed.clear();
+    }
+
+    /**
+     * Returns the online players of the teams that are not eliminated.
+     * The list is rebuilt only when a team's members change or a player joins or quits, so it can be iterated every
+     * tick without allocating.
+     *
+     * @return An unmodifiable list of the online participants.
+     */
+    public List<Player> getOnlineParticipants() {
+        return onlineParticipants;
+    }
+
+    private void updateOnlineParticipants() {
+        ArrayList<Player> participants = new ArrayList<>(sessions.size());
+        for (PlayerSession session : sessions.values()) {
+            if (session.team != null && teams.contains(session.team)) {
+                Player player = Bukkit.getPlayer(session.getUniqueId());
+                if (player != null) {
+                    participants.add(player);
+                }
             }
-            playersWithATeam.addAll(players);
         }
-        return playersWithATeam;
+        onlineParticipants = List.copyOf(participants);
     }
 
     public Team addTeam(String teamName, ChatColor color) {
@@ -92,18 +149,26 @@ public class TeamsManager {
     }
 
     public void addPlayerToTeam(Player player, Team team, boolean messagePlayer) {
+        PlayerSession session = getSession(player);
         if (team.getEntries().isEmpty()) {
-            teamCaptains.put(player, team);
+            session.captain = true;
             if (messagePlayer) {
                 plugin.sendMessage(player, "You are the captain of team " + team.getDisplayName());
             }
         }
 
         team.addEntry(player.getName());
+        session.team = team;
+        updateOnlineParticipants();
     }
 
     public void joinTeamRequest(Player player, Team team) {
-        teamRequests.put(getTeamCaptain(team), player);
+        Player captain = getTeamCaptain(team);
+        if (captain == null) {
+            plugin.sendMessage(player, "The captain of team " + team.getDisplayName() + ChatColor.RESET + " is offline.");
+            return;
+        }
+        getSession(captain).teamRequestSender = player.getUniqueId();
         plugin.sendMessage(player, "You have requested to join team " + team.getDisplayName());
 
         //send message to team captain about the request
@@ -112,17 +177,18 @@ public class TeamsManager {
         accept.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/gsblockshuffle team accept"));
         message.addExtra(accept);
 
-        plugin.sendMessage(getTeamCaptain(team), message);
+        plugin.sendMessage(captain, message);
     }
 
     public boolean joinTeamRequestAccept(Player captain) {
-        Player player = teamRequests.get(captain);
-        if (player == null || teamCaptains.get(captain) == null) {
+        PlayerSession session = getSession(captain);
+        Player player = session.teamRequestSender == null ? null : Bukkit.getPlayer(session.teamRequestSender);
+        if (player == null || !session.captain || session.team == null) {
             return false;
         }
-        Team team = teamCaptains.get(captain);
+        Team team = session.team;
         addPlayerToTeam(player, team, true);
-        teamRequests.remove(captain);
+        session.teamRequestSender = null;
 
         plugin.sendMessage(player, "You have been added to team " + team.getDisplayName());
         plugin.sendMessage(captain, player.getDisplayName() + " has been added to your team.");
@@ -143,7 +209,7 @@ public class TeamsManager {
         if (getTeam(targetPlayer) != null) {
             return false;
         }
-        if (!teamCaptains.containsKey(senderCaptain)) {
+        if (!isTeamCaptain(senderCaptain)) {
             return false;
         }
         plugin.sendMessage(senderCaptain, "You have invited " + targetPlayer.getName() + " to your team.");
@@ -154,7 +220,7 @@ public class TeamsManager {
         message.addExtra(accept);
 
         plugin.sendMessage(targetPlayer, message);
-        teamRequests.put(targetPlayer, senderCaptain);
+        getSession(targetPlayer).teamRequestSender = senderCaptain.getUniqueId();
         return true;
     }
 
@@ -167,11 +233,15 @@ public class TeamsManager {
      * @return boolean Returns true if the invite is successfully accepted, false otherwise.
      */
     public boolean teamInviteRequestAccept(Player senderPlayer) {
-        if (teamRequests.containsKey(senderPlayer)) {
-            Player captain = teamRequests.get(senderPlayer);
-            Team team = getTeam(captain);
+        PlayerSession session = getSession(senderPlayer);
+        if (session.teamRequestSender != null) {
+            Player captain = Bukkit.getPlayer(session.teamRequestSender);
+            session.teamRequestSender = null;
+            Team team = captain == null ? null : getTeam(captain);
+            if (team == null) {
+                return false;
+            }
             addPlayerToTeam(senderPlayer, team, true);
-            teamRequests.remove(senderPlayer);
             plugin.sendMessage(senderPlayer, "You have been added to team " + team.getDisplayName());
             return true;
         }
@@ -220,7 +290,7 @@ public class TeamsManager {
         }
         if (Objects.equals(teleportMode, "amountPerPlayer")) {
             // if team used up their teleports cancel the tp
-            if (playerTpUsed.contains(tpRequester)) {
+            if (getSession(tpRequester).teleportsUsedUp) {
                 tpRequester.sendMessage(ChatColor.RED + "You have 0 teleports left.");
                 return true;
             }
@@ -236,7 +306,7 @@ public class TeamsManager {
 
             plugin.sendMessage(tpTarget, message);
 
-            teleportRequests.put(tpTarget, tpRequester);
+            getSession(tpTarget).teleportRequester = tpRequester.getUniqueId();
             return true;
         }
         return false;
@@ -252,16 +322,16 @@ public class TeamsManager {
      * @return boolean Returns true if the teleport request is successfully accepted, false otherwise.
      */
     public boolean teamTeleportAccept(Player tpTarget) {
-        if (teleportRequests.containsKey(tpTarget)) {
-            Player tpRequester = teleportRequests.get(tpTarget);
-
+        PlayerSession session = getSession(tpTarget);
+        Player tpRequester = session.teleportRequester == null ? null : Bukkit.getPlayer(session.teleportRequester);
+        session.teleportRequester = null;
+        if (tpRequester != null) {
             String message = ChatColor.GREEN + "Teleport request accepted.";
 
             tpTarget.sendMessage(message);
             tpRequester.sendMessage(message);
 
             handleTeamTeleport(tpRequester, tpTarget);
-            teleportRequests.remove(tpTarget);
 
             return true;
         }
@@ -278,13 +348,13 @@ public class TeamsManager {
         if (Objects.equals(teleportMode, "amountPerTeam")) {
             tpRequester.teleport(tpTarget);
             // if team not already in usage counter - add it
-            if (!tpUsageCounter.containsKey(getTeam(tpRequester))) {
-                tpUsageCounter.put(getTeam(tpRequester), 0);
+            if (!teamTpUsageCounter.containsKey(getTeam(tpRequester))) {
+                teamTpUsageCounter.put(getTeam(tpRequester), 0);
             }
             // increment usage counter
-            int tpsUsed = tpUsageCounter.get(getTeam(tpRequester));
+            int tpsUsed = teamTpUsageCounter.get(getTeam(tpRequester));
             // increment tp counter and check if team reached their limit
-            tpUsageCounter.put(getTeam(tpRequester), tpsUsed + 1);
+            teamTpUsageCounter.put(getTeam(tpRequester), tpsUsed + 1);
 
             // send message to all players in the team
             for (String playerName : getTeam(tpRequester).getEntries()) {
@@ -300,18 +370,12 @@ public class TeamsManager {
         }
         if (Objects.equals(teleportMode, "amountPerPlayer")) {
             tpRequester.teleport(tpTarget);
-            // if team not already in usage counter - add it
-            if (!tpUsageCounter.containsKey(tpRequester)) {
-                tpUsageCounter.put(tpRequester, 0);
-            }
-            // increment usage counter
-            int tpsUsed = tpUsageCounter.get(tpRequester);
-            // increment tp counter and check if team reached their limit
-            tpsUsed++;
+            PlayerSession session = getSession(tpRequester);
+            // increment tp counter and check if player reached their limit
+            int tpsUsed = ++session.teleportsUsed;
             plugin.sendMessage(tpRequester, ChatColor.GRAY + "You have " + ChatColor.WHITE + (amountOfTeleports - tpsUsed) + ChatColor.GRAY + " teleports left.");
-            tpUsageCounter.put(tpRequester, tpsUsed);
             if (tpsUsed >= amountOfTeleports) {
-                playerTpUsed.add(tpRequester);
+                session.teleportsUsedUp = true;
             }
 
             return;
@@ -326,18 +390,55 @@ public class TeamsManager {
 
     public void removePlayerFromTeam(Player player, Team team) {
         team.removeEntry(player.getName());
+        PlayerSession session = sessions.get(player.getUniqueId());
+        if (session != null && session.team == team) {
+            session.team = null;
+            session.captain = false;
+        }
+        updateOnlineParticipants();
     }
 
+    /**
+     * Parks the session of a player who quit. The player is removed from their team until they rejoin, pending
+     * requests to the player are dropped. The session is released if there is nothing to keep.
+     *
+     * @param player The player who quit.
+     */
     public void removePlayerFromTeamAfterLeave(Player player) {
-        Team team = getTeam(player);
-        team.removeEntry(player.getName());
-        this.playersThatLeft.put(player.getName(), team);
+        PlayerSession session = sessions.get(player.getUniqueId());
+        if (session == null) {
+            return;
+        }
+        if (session.team != null) {
+            session.team.removeEntry(player.getName());
+            session.parkedTeam = session.team;
+            session.team = null;
+        }
+        session.teamRequestSender = null;
+        session.teleportRequester = null;
+        if (!session.isWorthParking()) {
+            sessions.remove(player.getUniqueId());
+        }
+        updateOnlineParticipants();
     }
 
+    /**
+     * Restores the session of a player who joined, adding the player back to the team they were in when they quit.
+     *
+     * @param player The player who joined.
+     */
     public void reAddPlayerToTeamAfterLeave(Player player) {
-        System.out.println("Adding player back to team: " + playersThatLeft);
-        this.playersThatLeft.get(player.getName()).addEntry(player.getName());
-        this.playersThatLeft.remove(player.getName());
+        PlayerSession session = getSession(player);
+        session.setName(player.getName());
+        Team team = session.parkedTeam;
+        session.parkedTeam = null;
+        if (team != null && (teams.contains(team) || eliminatedTeams.contains(team))) {
+            team.addEntry(player.getName());
+            session.team = team;
+        } else {
+            session.captain = false;
+        }
+        updateOnlineParticipants();
     }
 
     /**
@@ -346,113 +447,200 @@ public class TeamsManager {
      * @param team The team to be removed.
      */
     public void removeTeam(Team team) {
-        Player captain = getTeamCaptain(team);
         teams.remove(team);
-        teamCaptains.remove(captain);
-        teamRequests.remove(captain);
+        teamTpUsed.remove(team);
+        teamTpUsageCounter.remove(team);
+        for (Iterator<PlayerSession> iterator = sessions.values().iterator(); iterator.hasNext(); ) {
+            PlayerSession session = iterator.next();
+            if (session.team == team || session.parkedTeam == team) {
+                if (session.captain) {
+                    session.teamRequestSender = null;
+                }
+                session.team = null;
+                session.parkedTeam = null;
+                session.captain = false;
+                // release parked sessions that were only kept for the team
+                if (Bukkit.getPlayer(session.getUniqueId()) == null && !session.isWorthParking()) {
+                    iterator.remove();
+                }
+            }
+        }
 
         team.unregister();
+        updateOnlineParticipants();
     }
 
+    /**
+     * Moves a team to the eliminated teams.
+     * Its players keep the team in their sessions, but getTeam no longer returns it until resetEliminatedTeams is called.
+     *
+     * @param team The team to be eliminated.
+     */
     public void eliminateTeam(Team team) {
         teams.remove(team);
         eliminatedTeams.add(team);
+        updateOnlineParticipants();
     }
 
     public boolean isPlayerInNoTeam(Player player) {
-        for (Team team : teams) {
-            if (team.hasEntry(player.getName())) {
-                return false;
-            }
-        }
-        return true;
+        return getTeam(player) == null;
     }
 
-    private void setTeamScore(Team team, int score) {
-        teamPointsMap.put(team, score);
+    /**
+     * Increments the score of a team.
+     * The scoreboard is not updated until updateScoreboardIfChanged or setScoreboard is called,
+     * so multiple points scored in the same tick result in a single update.
+     *
+     * @param team The team whose score is incremented.
+     */
+    public void incrementTeamScore(Team team) {
+        leaderboard.incrementScore(team);
+        scoreboardChanged = true;
     }
 
-    public void incrementTeamScore(Team team) {
-        setTeamScore(team, getTeamScore(team) + 1);
-        setScoreboard();
+    public void updateScoreboardIfChanged() {
+        if (scoreboardChanged) {
+            setScoreboard();
+        }
     }
 
     public Team getTeam(String teamName) {
         return scoreboard.getTeam(teamName);
     }
 
+    /**
+     * Returns the team of a player, looked up by the player's UUID.
+     *
+     * @param player The player whose team is returned.
+     * @return The team of the player, null if the player is in no team or the team has been eliminated.
+     */
     public Team getTeam(Player player) {
-        for (Team team : teams) {
-            if (team.hasEntry(player.getName())) {
-                return team;
+        PlayerSession session = sessions.get(player.getUniqueId());
+        Team team = session == null ? null : session.team;
+        return team != null && teams.contains(team) ? team : null;
+    }
+
+    /**
+     * Compares the teams stored in the player sessions with the entries of the scoreboard teams.
+     *
+     * @return A description of every difference, empty if the sessions are consistent.
+     */
+    public List<String> checkPlayerTeamIndex() {
+        List<String> inconsistencies = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Team scoreboardTeam = scoreboard.getEntryTeam(player.getName());
+            PlayerSession session = sessions.get(player.getUniqueId());
+            Team indexedTeam = session == null ? null : session.team;
+            if (!Objects.equals(scoreboardTeam, indexedTeam)) {
+                inconsistencies.add(player.getName() + " is in " + (scoreboardTeam == null ? "no team" : scoreboardTeam.getName())
+                        + " but indexed in " + (indexedTeam == null ? "no team" : indexedTeam.getName()));
             }
         }
-        return null;
+        for (PlayerSession session : sessions.values()) {
+            if (session.team == null) {
+                continue;
+            }
+            if (Bukkit.getPlayer(session.getUniqueId()) == null) {
+                inconsistencies.add(session.getName() + " is offline but indexed in " + session.team.getName());
+            } else if (!teams.contains(session.team) && !eliminatedTeams.contains(session.team)) {
+                inconsistencies.add(session.getName() + " is indexed in removed team " + session.team.getName());
+            }
+        }
+        return inconsistencies;
     }
 
+    /**
+     * Updates the scores of the teams and gives the scoreboard to the online players that don't have it yet.
+     * Only the scores that changed since the last update are sent, the entries of teams that were eliminated,
+     * removed or renamed are removed from the scoreboard.
+     */
     public void setScoreboard() {
-        scoreboard.getObjectives().forEach(Objective::unregister);
-
-        Objective objective = scoreboard.registerNewObjective("Score", "dummy", "Score");
+        scoreboardChanged = false;
+        Objective objective = getScoreObjective();
 
+        Set<String> entries = new HashSet<>();
         for (Team team : teams) {
-            Score score = objective.getScore(team.getDisplayName());
-            score.setScore(teamPointsMap.getOrDefault(team, 0));
+            String entry = team.getDisplayName();
+            int score = leaderboard.getScore(team);
+            entries.add(entry);
+            Integer sentScore = sentScores.put(entry, score);
+            if (sentScore == null || sentScore != score) {
+                objective.getScore(entry).setScore(score);
+            }
+        }
+        for (Iterator<String> iterator = sentScores.keySet().iterator(); iterator.hasNext(); ) {
+            String entry = iterator.next();
+            if (!entries.contains(entry)) {
+                scoreboard.resetScores(entry);
+                iterator.remove();
+            }
         }
 
         for (Player player : Bukkit.getOnlinePlayers()) {
-            player.setScoreboard(scoreboard);
+            if (player.getScoreboard() != scoreboard) {
+                player.setScoreboard(scoreboard);
+            }
         }
         setShowScoreboard(showScoreboard);
     }
 
-    public int getTeamScore(Team team) {
-        return Objects.requireNonNull(scoreboard.getObjective("Score")).getScore(team.getDisplayName()).getScore();
-    }
-
-    public void clearScoreboards() {
-        Objective objective = scoreboard.getObjective("Score");
-        if (objective != null) {
-            objective.unregister();
+    /**
+     * @return The "Score" objective, registered if it doesn't exist yet.
+     */
+    private Objective getScoreObjective() {
+        if (scoreObjective == null) {
+            // an objective left over from an earlier scoreboard update is replaced
+            Objective objective = scoreboard.getObjective("Score");
+            if (objective != null) {
+                objective.unregister();
+            }
+            scoreObjective = scoreboard.registerNewObjective("Score", "dummy", "Score");
+            sentScores.clear();
         }
-        teamPointsMap.clear();
+        return scoreObjective;
     }
 
-    public List<Map.Entry<Team, Integer>> getTeamScoreList() {
-        List<Map.Entry<Team, Integer>> list = new ArrayList<>(teamPointsMap.entrySet());
-        list.sort(Map.Entry.comparingByValue(Collections.reverseOrder()));
-
-        return list;
+    /**
+     * @return The leaderboard of the teams, updated on every score change.
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
     }
 
-    public List<Map.Entry<Team, Integer>> getTeamPlaceList() {
-        List<Map.Entry<Team, Integer>> sortedTeams = getTeamScoreList();
-        List<Map.Entry<Team, Integer>> teamPlaceList = new ArrayList<>();
-
-        int rank = 1;
-        int prevScore = -1;
-
-        for (int i = 0; i < sortedTeams.size(); i++) {
-            int currentScore = sortedTeams.get(i).getValue();
-            if (currentScore != prevScore) {
-                rank = i + 1;
-            }
-            teamPlaceList.add(new AbstractMap.SimpleEntry<>(sortedTeams.get(i).getKey(), rank));
-            prevScore = currentScore;
+    public void clearScoreboards() {
+        if (scoreObjective != null) {
+            scoreObjective.unregister();
+            scoreObjective = null;
         }
-
-        return teamPlaceList;
+        sentScores.clear();
+        leaderboard.clear();
     }
 
+    /**
+     * @param teamToSearch The team whose captain is returned.
+     * @return The captain of the team, null if the captain is offline or the team has none.
+     */
     public Player getTeamCaptain(Team teamToSearch) {
-        for (Player captain : teamCaptains.keySet()) {
-            if (teamCaptains.get(captain).equals(teamToSearch)) {
-                return captain;
+        for (PlayerSession session : sessions.values()) {
+            if (session.captain && teamToSearch.equals(session.team)) {
+                return Bukkit.getPlayer(session.getUniqueId());
             }
         }
         return null;
     }
 
+    /**
+     * @param player The player to check, may be null.
+     * @return True if the player is the captain of a team.
+     */
+    public boolean isTeamCaptain(Player player) {
+        if (player == null) {
+            return false;
+        }
+        PlayerSession session = sessions.get(player.getUniqueId());
+        return session != null && session.captain && session.team != null;
+    }
+
     /**
      * Method handling leaving a team.
      * If the team will remain empty, the team will be removed.
@@ -466,16 +654,15 @@ public class TeamsManager {
             sender.sendMessage(ChatColor.RED + "You are not on a team.");
             return;
         }
+        boolean wasCaptain = isTeamCaptain(sender);
         removePlayerFromTeam(sender, team);
         if (team.getEntries().isEmpty()) {
             removeTeam(team);
-        }
-        if (teamCaptains.containsKey(sender)) {
-            teamCaptains.remove(sender);
+        } else if (wasCaptain) {
             // make another player the captain
             Player newCaptain = Bukkit.getPlayer(team.getEntries().iterator().next());
-            teamCaptains.put(newCaptain, team);
             assert newCaptain != null;
+            getSession(newCaptain).captain = true;
             newCaptain.sendMessage("You are now the captain of " + team.getDisplayName());
         }
         sender.sendMessage(ChatColor.GREEN + "You have left your team.");
@@ -499,23 +686,29 @@ public class TeamsManager {
             Player player = Bukkit.getPlayer(entry);
             if (player != null) {
                 player.setDisplayName(team.getColor() + player.getName() + ChatColor.RESET);
-                player.setScoreboard(scoreboard);
             }
         }
+        // the entry of the old display name is removed by setScoreboard
         setScoreboard();
     }
 
     public void showScoreboard() {
-        Objects.requireNonNull(scoreboard.getObjective("Score")).setDisplaySlot(DisplaySlot.SIDEBAR);
+        Objective objective = getScoreObjective();
+        if (objective.getDisplaySlot() != DisplaySlot.SIDEBAR) {
+            objective.setDisplaySlot(DisplaySlot.SIDEBAR);
+        }
     }
 
     private void hideScoreboard() {
-        Objects.requireNonNull(scoreboard.getObjective("Score")).setDisplaySlot(null);
+        Objective objective = getScoreObjective();
+        if (objective.getDisplaySlot() != null) {
+            objective.setDisplaySlot(null);
+        }
     }
 
-    public void initializeTeamPointsMap() {
+    public void initializeLeaderboard() {
         for (Team team : teams) {
-            teamPointsMap.put(team, 0);
+            leaderboard.addTeam(team);
         }
     }
 
@@ -523,15 +716,10 @@ public class TeamsManager {
         teams.addAll(eliminatedTeams);
 
         eliminatedTeams.clear();
+        updateOnlineParticipants();
     }
 
     public boolean isTeamWinning(Team team) {
-        int highestScore = 0;
-        for (Map.Entry<Team, Integer> entry : teamPointsMap.entrySet()) {
-            if (entry.getValue() > highestScore) {
-                highestScore = entry.getValue();
-            }
-        }
-        return teamPointsMap.get(team) == highestScore;
+        return leaderboard.isLeading(team);
     }
 }
\ No newline at end of file